@@ -0,0 +1,267 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Count the status codes in a log for every month of every year.
+ * The counts are held in one primitive array per year, with a slot
+ * for each month and code, so any count can be looked up directly.
+ * Codes from 100 to 599 each have their own slot, found from the
+ * code's class (the hundreds) and its offset within the class.
+ * Any other code is counted in a single slot for unusual codes,
+ * except for the NO_CODE given to entries from logs without status
+ * codes, which has a slot of its own so that such logs can be told
+ * apart from logs with unusual codes.
+ * The years covered grow as entries from new years are counted.
+ *
+ * @author Steve Cate
+ * @version    10/17/26
+ */
+public class CodeCounts implements LogAccumulator
+{
+    // The lowest and highest codes with their own slot.
+    public static final int FIRST_CODE = 100, LAST_CODE = 599;
+    // The slot for codes outside FIRST_CODE to LAST_CODE.
+    private static final int OTHER_SLOT = LAST_CODE - FIRST_CODE + 1;
+    // The slot for entries without a code (LoglineTokenizer.NO_CODE).
+    private static final int NO_CODE_SLOT = OTHER_SLOT + 1;
+    // How many slots each month has.
+    private static final int SLOTS_PER_MONTH = NO_CODE_SLOT + 1;
+    // How many slots each year has.
+    private static final int SLOTS_PER_YEAR = 12 * SLOTS_PER_MONTH;
+
+    // The counts for each year, starting at firstYear.
+    // Null until something is counted.
+    private int[][] years;
+    // The year that years[0] holds.
+    private int firstYear;
+
+    /**
+     * Create an empty set of counts.
+     */
+    public CodeCounts()
+    {
+        years = null;
+        firstYear = 0;
+    }
+
+    /**
+     * Count the code of an entry against its year and month.
+     * @param record The entry to count, as a packed record.
+     */
+    public void accumulate(long record)
+    {
+        int[] year = yearFor(LogEntry.yearOf(record));
+        year[(LogEntry.monthOf(record) - 1) * SLOTS_PER_MONTH +
+             slotOf(LogEntry.codeOf(record))]++;
+    }
+
+    /**
+     * Return how many times a code was seen in a month.
+     * @param year The year.
+     * @param month The month (1-12).
+     * @param code The status code.
+     * @return The count, which is for all unusual codes
+     *         together if the code is not from 100 to 599
+     *         or NO_CODE.
+     */
+    public int getCount(int year, int month, int code)
+    {
+        int[] counts = countsFor(year);
+        if(counts == null || month < 1 || month > 12) {
+            return 0;
+        }
+        return counts[(month - 1) * SLOTS_PER_MONTH + slotOf(code)];
+    }
+
+    /**
+     * Return how many times a code was seen in a year.
+     * @param year The year.
+     * @param code The status code.
+     * @return The count.
+     */
+    public int getCount(int year, int code)
+    {
+        int total = 0;
+        for(int month = 1; month <= 12; month++) {
+            total += getCount(year, month, code);
+        }
+        return total;
+    }
+
+    /**
+     * Return the codes that were seen at all in a year, in order.
+     * If any unusual codes were seen, LAST_CODE + 1 stands for them,
+     * and NO_CODE comes last if any entries had no code.
+     * @param year The year.
+     * @return The codes seen.
+     */
+    public int[] getCodesSeen(int year)
+    {
+        int[] counts = countsFor(year);
+        if(counts == null) {
+            return new int[0];
+        }
+        int[] seen = new int[SLOTS_PER_MONTH];
+        int numSeen = 0;
+        for(int slot = 0; slot < SLOTS_PER_MONTH; slot++) {
+            for(int month = 0; month < 12; month++) {
+                if(counts[month * SLOTS_PER_MONTH + slot] > 0) {
+                    seen[numSeen++] = (slot == NO_CODE_SLOT) ? LoglineTokenizer.NO_CODE
+                                                             : FIRST_CODE + slot;
+                    break;
+                }
+            }
+        }
+        return Arrays.copyOf(seen, numSeen);
+    }
+
+    /**
+     * Add all of another set of counts to these.
+     * @param other The counts to add.
+     */
+    public void add(CodeCounts other)
+    {
+        if(other.years == null) {
+            return;
+        }
+        for(int i = 0; i < other.years.length; i++) {
+            int[] from = other.years[i];
+            if(from != null) {
+                int[] to = yearFor(other.firstYear + i);
+                for(int slot = 0; slot < SLOTS_PER_YEAR; slot++) {
+                    to[slot] += from[slot];
+                }
+            }
+        }
+    }
+
+    /**
+     * Set all of the counts back to zero.
+     */
+    public void clear()
+    {
+        years = null;
+        firstYear = 0;
+    }
+
+    /**
+     * Set all of the counts back to zero, as clear() does.
+     */
+    public void reset()
+    {
+        clear();
+    }
+
+    /**
+     * Write the counts out. Only the counts that are not
+     * zero are written, so unused codes take no space.
+     * @param output Where to write the counts.
+     * @throws IOException If the counts cannot be written.
+     */
+    public void writeTo(DataOutputStream output) throws IOException
+    {
+        int numYears = (years == null) ? 0 : years.length;
+        output.writeInt(firstYear);
+        output.writeInt(numYears);
+        for(int i = 0; i < numYears; i++) {
+            int[] counts = years[i];
+            int used = 0;
+            for(int slot = 0; counts != null && slot < SLOTS_PER_YEAR; slot++) {
+                if(counts[slot] != 0) {
+                    used++;
+                }
+            }
+            output.writeInt(used);
+            for(int slot = 0; used > 0 && slot < SLOTS_PER_YEAR; slot++) {
+                if(counts[slot] != 0) {
+                    output.writeShort(slot);
+                    output.writeInt(counts[slot]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Read counts written by writeTo.
+     * @param input Where to read the counts from.
+     * @return The counts.
+     * @throws IOException If the counts cannot be read.
+     */
+    public static CodeCounts readFrom(DataInputStream input) throws IOException
+    {
+        CodeCounts codeCounts = new CodeCounts();
+        int firstYear = input.readInt();
+        int numYears = input.readInt();
+        for(int i = 0; i < numYears; i++) {
+            int used = input.readInt();
+            if(used > 0) {
+                int[] counts = codeCounts.yearFor(firstYear + i);
+                for(int j = 0; j < used; j++) {
+                    int slot = input.readUnsignedShort();
+                    if(slot >= SLOTS_PER_YEAR) {
+                        throw new IOException("Bad code count slot: " + slot);
+                    }
+                    counts[slot] = input.readInt();
+                }
+            }
+        }
+        return codeCounts;
+    }
+
+    /**
+     * @param code A status code.
+     * @return The slot the code is counted in.
+     */
+    private static int slotOf(int code)
+    {
+        if(code == LoglineTokenizer.NO_CODE) {
+            return NO_CODE_SLOT;
+        }
+        if(code < FIRST_CODE || code > LAST_CODE) {
+            return OTHER_SLOT;
+        }
+        // The class of the code (1-5) and its offset in that class.
+        return (code / 100 - 1) * 100 + code % 100;
+    }
+
+    /**
+     * @param year A year.
+     * @return The counts for the year, or null if there are none.
+     */
+    private int[] countsFor(int year)
+    {
+        if(years == null || year < firstYear || year >= firstYear + years.length) {
+            return null;
+        }
+        return years[year - firstYear];
+    }
+
+    /**
+     * Return the counts for a year, making room for them if need be.
+     * @param year A year.
+     * @return The counts for the year.
+     */
+    private int[] yearFor(int year)
+    {
+        if(years == null) {
+            years = new int[1][];
+            firstYear = year;
+        }
+        else if(year < firstYear) {
+            int[][] grown = new int[years.length + (firstYear - year)][];
+            System.arraycopy(years, 0, grown, firstYear - year, years.length);
+            years = grown;
+            firstYear = year;
+        }
+        else if(year >= firstYear + years.length) {
+            years = Arrays.copyOf(years, year - firstYear + 1);
+        }
+        int index = year - firstYear;
+        if(years[index] == null) {
+            years[index] = new int[SLOTS_PER_YEAR];
+        }
+        return years[index];
+    }
+}
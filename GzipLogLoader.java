@@ -0,0 +1,297 @@
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Read a gzip-compressed log file without first decompressing it
+ * to disk. The file is decompressed on a thread of its own, into
+ * blocks that are handed over to be parsed, so decompressing the
+ * next block goes on at the same time as parsing the last one.
+ * Files made of several gzip members joined together, as produced
+ * by appending to a compressed log, are read in full.
+ *
+ * @author Steve Cate
+ * @version    10/17/26
+ */
+public class GzipLogLoader
+{
+    // The first two bytes of every gzip file.
+    private static final int GZIP_MAGIC_1 = 0x1F, GZIP_MAGIC_2 = 0x8B;
+    // How much is decompressed at a time.
+    private static final int BLOCK_BYTES = 1 << 20;
+    // How many decompressed blocks may be waiting to be parsed.
+    private static final int QUEUED_BLOCKS = 4;
+
+    /**
+     * Is a stream gzip-compressed? The stream is left where it was.
+     * @param input The stream to check, which must support mark.
+     * @return true if the stream starts with the gzip header.
+     * @throws IOException If the stream cannot be read.
+     */
+    public static boolean isGzip(BufferedInputStream input) throws IOException
+    {
+        input.mark(2);
+        int first = input.read();
+        int second = input.read();
+        input.reset();
+        return first == GZIP_MAGIC_1 && second == GZIP_MAGIC_2;
+    }
+
+    /**
+     * Is a file gzip-compressed?
+     * @param file The file to check.
+     * @return true if the file starts with the gzip header.
+     * @throws IOException If the file cannot be read.
+     */
+    public static boolean isGzip(File file) throws IOException
+    {
+        try (BufferedInputStream input = new BufferedInputStream(new FileInputStream(file), 2)) {
+            return isGzip(input);
+        }
+    }
+
+    /**
+     * Read every line of a compressed log file into a store. The records
+     * are in the same order as the lines of the file; they are not sorted.
+     * Lines that cannot be parsed are skipped.
+     * @param file The compressed log file.
+     * @return The records of the file.
+     * @throws IOException If the file cannot be read or decompressed.
+     */
+    public LogStore load(File file) throws IOException
+    {
+        return load(file, new LogParseState(file, LogErrorPolicy.skip()));
+    }
+
+    /**
+     * Read every line of a compressed log file into a store. The records
+     * are in the same order as the lines of the file; they are not sorted.
+     * @param file The compressed log file.
+     * @param state What to do with lines that cannot be parsed.
+     * @return The records of the file.
+     * @throws IOException If the file cannot be read or decompressed.
+     * @throws java.util.NoSuchElementException If there are too
+     *         many lines that cannot be parsed.
+     */
+    public LogStore load(File file, LogParseState state) throws IOException
+    {
+        LogStore store = new LogStore();
+        read(file, state, store::add);
+        return store;
+    }
+
+    /**
+     * Read every line of a compressed log file, and give the entries
+     * to an accumulator in the order they are in the file.
+     * @param file The compressed log file.
+     * @param state What to do with lines that cannot be parsed.
+     * @param accumulator Where to pass the entries.
+     * @throws IOException If the file cannot be read or decompressed.
+     * @throws java.util.NoSuchElementException If there are too
+     *         many lines that cannot be parsed.
+     */
+    public void read(File file, LogParseState state, LogAccumulator accumulator)
+        throws IOException
+    {
+        Inflater inflater = new Inflater(new GZIPInputStream(new FileInputStream(file), 1 << 16));
+        Thread thread = new Thread(inflater, "gzip " + file.getName());
+        thread.setDaemon(true);
+        thread.start();
+        try {
+            parse(inflater, state, accumulator);
+        }
+        finally {
+            // Stop the inflater early if parsing failed.
+            thread.interrupt();
+            try {
+                thread.join();
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Parse the blocks from an inflater as they arrive. A line
+     * split between two blocks is put back together first.
+     * @param inflater Where the blocks come from.
+     * @param state What to do with lines that cannot be parsed.
+     * @param accumulator Where to pass the entries.
+     */
+    private void parse(Inflater inflater, LogParseState state, LogAccumulator accumulator)
+        throws IOException
+    {
+        LoglineTokenizer tokenizer = new LoglineTokenizer(state);
+        // The start of a line that runs on into the next block.
+        byte[] carry = new byte[256];
+        int carryLength = 0;
+        while(true) {
+            Block block;
+            try {
+                block = inflater.full.take();
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while reading a compressed log");
+            }
+            if(block.length < 0) {
+                break;
+            }
+            byte[] data = block.data;
+            int firstNewline = indexOf(data, 0, block.length, (byte) '\n');
+            if(firstNewline < 0) {
+                // The whole block is part of one line.
+                carry = append(carry, carryLength, data, 0, block.length);
+                carryLength += block.length;
+            }
+            else {
+                int lastNewline = lastIndexOf(data, block.length, (byte) '\n');
+                int start = 0;
+                if(carryLength > 0) {
+                    // Finish the line from the last block.
+                    carry = append(carry, carryLength, data, 0, firstNewline);
+                    tokenizer.tokenizeLines(carry, 0, carryLength + firstNewline, accumulator);
+                    carryLength = 0;
+                    start = firstNewline + 1;
+                }
+                if(start < lastNewline) {
+                    tokenizer.tokenizeLines(data, start, lastNewline, accumulator);
+                }
+                carryLength = block.length - lastNewline - 1;
+                carry = append(carry, 0, data, lastNewline + 1, carryLength);
+            }
+            inflater.free.add(block);
+        }
+        Throwable failure = inflater.failure;
+        if(failure instanceof IOException) {
+            throw (IOException) failure;
+        }
+        if(failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if(failure instanceof Error) {
+            throw (Error) failure;
+        }
+        if(carryLength > 0) {
+            // The last line need not end with a newline.
+            tokenizer.tokenizeLines(carry, 0, carryLength, accumulator);
+        }
+    }
+
+    /**
+     * Copy bytes onto the end of a buffer, making it larger if need be.
+     * @return The buffer, or a larger copy of it.
+     */
+    private static byte[] append(byte[] buffer, int length, byte[] data, int start, int count)
+    {
+        if(length + count > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + count));
+        }
+        System.arraycopy(data, start, buffer, length, count);
+        return buffer;
+    }
+
+    /**
+     * @return The index of the first b in data[start..end), or -1.
+     */
+    private static int indexOf(byte[] data, int start, int end, byte b)
+    {
+        for(int i = start; i < end; i++) {
+            if(data[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return The index of the last b in data[0..end), or -1.
+     */
+    private static int lastIndexOf(byte[] data, int end, byte b)
+    {
+        for(int i = end - 1; i >= 0; i--) {
+            if(data[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * A block of decompressed bytes.
+     */
+    private static class Block
+    {
+        // The bytes, of which only the first length are in use.
+        // A length of -1 marks the end of the file.
+        byte[] data;
+        int length;
+
+        Block(int size)
+        {
+            data = new byte[size];
+        }
+    }
+
+    /**
+     * Decompress a file into blocks, reusing the blocks once they
+     * have been parsed, until the file ends or it is interrupted.
+     */
+    private static class Inflater implements Runnable
+    {
+        // The decompressed stream.
+        private final InputStream input;
+        // Blocks waiting to be parsed, and blocks ready to be filled.
+        final BlockingQueue<Block> full = new ArrayBlockingQueue<>(QUEUED_BLOCKS + 1);
+        final BlockingQueue<Block> free = new ArrayBlockingQueue<>(QUEUED_BLOCKS + 1);
+        // The problem that stopped decompression, if any.
+        volatile Throwable failure;
+
+        Inflater(InputStream input)
+        {
+            this.input = input;
+            for(int i = 0; i < QUEUED_BLOCKS; i++) {
+                free.add(new Block(BLOCK_BYTES));
+            }
+        }
+
+        public void run()
+        {
+            boolean stopped = false;
+            try (InputStream in = input) {
+                while(true) {
+                    Block block = free.take();
+                    block.length = in.readNBytes(block.data, 0, BLOCK_BYTES);
+                    if(block.length == 0) {
+                        break;
+                    }
+                    full.put(block);
+                }
+            }
+            catch(InterruptedException e) {
+                // Parsing has stopped, so there is no one to hand blocks to.
+                stopped = true;
+            }
+            catch(Throwable e) {
+                failure = e;
+            }
+            finally {
+                // However decompression ended, tell the parser, so
+                // that it never waits for a block that will not come.
+                // There is always room, as the blocks are reused.
+                if(!stopped) {
+                    Block end = new Block(0);
+                    end.length = -1;
+                    full.add(end);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+/**
+ * Something that collects information from log entries,
+ * such as one of the LogAnalyzer histograms.
+ * Accumulators are fed one entry at a time so that any
+ * number of them can share a single pass over the log.
+ * Each entry is given as a packed record, which can be read
+ * with LogEntry's static methods such as LogEntry.hourOf(),
+ * so a LogStore can be scanned without creating any objects.
+ * An accumulator that is fed the whole log again, such as when a
+ * followed log has been truncated, is reset first.
+ *
+ * @author Steve Cate
+ * @version    10/17/26
+ */
+public interface LogAccumulator
+{
+    /**
+     * Take account of a single entry from the log.
+     * @param record The entry to add, as a packed record.
+     */
+    void accumulate(long record);
+
+    /**
+     * Forget every entry taken account of so far, before the
+     * entries are given again from the start. By default nothing
+     * is done, for accumulators that keep nothing to forget.
+     */
+    default void reset()
+    {
+    }
+}
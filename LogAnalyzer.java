@@ -1,9 +1,18 @@
 // for rounding the monthly code avrgaes
 import java.lang.Math;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * Read web server data and analyse hourly access patterns.
  * 
+ * Each set of counts is only worked out from the log when a
+ * question first needs it, and is then kept until the log changes.
+ * analyzeAllData() works out all of them in a single pass, which
+ * is quicker when many different questions are to be asked.
+ * 
  * @author David J. Barnes and Michael Kölling.
  * 
  * @author Steve Cate
@@ -11,10 +20,13 @@ import java.lang.Math;
  */
 public class LogAnalyzer
 {
+    // All of the counts that are filled in from the log. The hourly,
+    // daily, monthly, yearly and code counts below are part of these.
+    private LogCounts counts;
     // Where to calculate the hourly access counts.
     private int[] hourCounts;
     // Where to calculate the daily access counts.
-    private int[] dayCounts;
+    private RangeHistogram dayCounts;
     // Where to calculate the monthly access counts.
     private int[] monthCounts;
     // Where to calculate the avarge monthly access counts.
@@ -22,31 +34,35 @@ public class LogAnalyzer
     // Where to calculate access counts for each day of the week.
     private int[] dayOfTheWeekCounts;
     // Where to calculate access counts for each year.
-    private int[] yearCounts;
+    private RangeHistogram yearCounts;
+    // Where to count each status code for each month of each year.
+    private CodeCounts codeCounts;
+    // Which of the counts have been filled in from the log so far,
+    // as bits from those below.
+    private int counted;
+    private static final int HOURS = 1, DAYS = 2, MONTHS = 4, YEARS = 8, CODES = 16,
+                             ALL = HOURS | DAYS | MONTHS | YEARS | CODES;
+    // Where to count the accesses in every minute of the log.
+    // Only filled in once a window of minutes is asked about.
+    private MinuteSeries minuteCounts;
     // Use a LogfileReader to access the data.
     private LogfileReader reader;
+    // Whether there are log lines behind the counts. Without
+    // them the counts cannot be worked out again, so are kept.
+    private boolean hasLog;
+    // Other accumulators that are filled in along with the counts.
+    private ArrayList<LogAccumulator> accumulators;
 
     /**
      * Create an object to analyze hourly web accesses.
      */
     public LogAnalyzer()
     { 
-        // Create the array object to hold the hourly
-        // access counts.
-        hourCounts = new int[24];
-        // An array to hold daily access counts
-        dayCounts = new int[28];
-        // An array to hold monthly access counts
-        monthCounts = new int[12];
-        // An array to hold access counts for days of the week
-        dayOfTheWeekCounts = new int [7];
-        // An array to hold access counts for years
-        // Only goes up to 5 years because thats the most we are working with right now
-        yearCounts = new int [5];
-        // An array to hold avrage monthly access counts
-        monthlyAverages = new int[12];
+        // Create the arrays and histograms to hold the counts.
+        createCounts();
         // Create the reader to obtain the data.
         reader = new LogfileReader();
+        registerAccumulators();
     }
     
     /**
@@ -54,64 +70,404 @@ public class LogAnalyzer
      */
     public LogAnalyzer(String fileName)
     {
-        hourCounts = new int[24];
-        dayCounts = new int [28];
-        monthCounts = new int [12];
+        this(fileName, ReadMode.LOAD);
+    }
+    
+    /**
+     * Create an object to open a certain file that is read in
+     * the given way. Use ReadMode.STREAM for files that are too
+     * large to hold in memory.
+     */
+    public LogAnalyzer(String fileName, ReadMode mode)
+    {
+        this(fileName, mode, LogErrorPolicy.skip());
+    }
+    
+    /**
+     * Create an object to open a certain file that is read in
+     * the given way, dealing with lines that cannot be parsed
+     * as a policy says.
+     */
+    public LogAnalyzer(String fileName, ReadMode mode, LogErrorPolicy errorPolicy)
+    {
+        createCounts();
+        
+        reader = new LogfileReader(fileName, mode, errorPolicy);
+        registerAccumulators();
+    }
+    
+    /**
+     * Create an object to open a certain file, taking the counts
+     * from the rollup saved alongside it (see LogRollup) when there
+     * is one. If lines have only been added to the file since the
+     * rollup was made, only those lines are read. Otherwise the whole
+     * file is analyzed and a new rollup is saved for next time.
+     * The file is streamed rather than loaded, so printData still works.
+     * @param fileName The log file.
+     * @param useRollup Whether to use and keep up a rollup.
+     */
+    public LogAnalyzer(String fileName, boolean useRollup)
+    {
+        createCounts();
+        
+        reader = new LogfileReader(fileName, useRollup ? ReadMode.STREAM : ReadMode.LOAD);
+        registerAccumulators();
+        
+        File file = reader.getFile();
+        if(!useRollup || file == null)
+        {
+            return;
+        }
+        try
+        {
+            analyzeWithRollup(file);
+        }
+        catch(IOException e)
+        {
+            System.out.println("Problem encountered: " + e);
+            analyzeAllData();
+        }
+    }
+    
+    /**
+     * Create an object that answers questions about logs that have
+     * already been analyzed, such as counts merged from several logs.
+     * There are no log lines, so only the counts are available,
+     * and the analyze methods leave them as they are.
+     * @param counts The counts to use. They are copied.
+     */
+    public LogAnalyzer(LogCounts counts)
+    {
+        createCounts();
+        this.counts.add(counts);
+        
+        reader = new LogfileReader(new LogStore());
+        registerAccumulators();
+        counted = ALL;
+        hasLog = false;
+    }
+    
+    /**
+     * Create the arrays for the counts.
+     */
+    private void createCounts()
+    {
+        counts = new LogCounts();
+        counted = 0;
+        hasLog = true;
+        hourCounts = counts.getHourCounts();
+        dayCounts = counts.getDayCounts();
+        monthCounts = counts.getMonthCounts();
         dayOfTheWeekCounts = new int [7];
-        yearCounts = new int [5];
+        yearCounts = counts.getYearCounts();
         monthlyAverages = new int[12];
+        codeCounts = counts.getCodeCounts();
+    }
+    
+    /**
+     * Fill in the counts from the rollup for a log file, bringing it
+     * up to date first or making a new one if need be.
+     * Only added lines of a plain text log can be read on their own;
+     * a binary or compressed log that has changed is read again in full.
+     * @param file The log file.
+     * @throws IOException If the log or the rollup cannot be read or written.
+     */
+    private void analyzeWithRollup(File file) throws IOException
+    {
+        LogRollup rollup = LogRollup.read(file);
+        long covered = 0;
+        boolean plainText = !BinaryLogFormat.isBinary(file) && !GzipLogLoader.isGzip(file);
+        if(rollup != null && (rollup.isCurrent(file) || (plainText && rollup.isPrefixOf(file))))
+        {
+            rollup.copyCounts(counts);
+            covered = rollup.getSize();
+        }
+        else
+        {
+            rollup = null;
+        }
         
-        reader = new LogfileReader(fileName);
+        // Read whatever the rollup does not already cover.
+        boolean changed = (rollup == null) || (file.length() > covered);
+        if(changed && !plainText)
+        {
+            analyze(counts);
+            covered = file.length();
+        }
+        else if(changed)
+        {
+            long startTime = LogMetrics.startTimer();
+            LogfileFollower follower = new LogfileFollower(file, covered);
+            int lines = follower.readNew(counts);
+            LogMetrics.stopTimer(LogMetrics.Stage.AGGREGATE, startTime);
+            LogMetrics.linesRead(lines, follower.getOffset() - covered);
+            covered = follower.getOffset();
+        }
+        counted = ALL;
         
-        // We can fill out the array lists right away because we have
-        // all the data in the file
-        analyzeHourlyData();
-        analyzeDailyData();
-        analyzeMonthlyData();
+        if(changed)
+        {
+            long[] checksums = (rollup != null) ? rollup.checksumsTo(file, covered)
+                                                : LogRollup.checksums(file, covered);
+            new LogRollup(covered, checksums, counts).write(file);
+        }
+        else if(!rollup.isUntouched(file))
+        {
+            // The log was touched but not changed, so save its new
+            // details to keep the next check quick.
+            rollup.write(file);
+        }
+    }
+    
+    /**
+     * Set up the list of other accumulators to fill in.
+     */
+    private void registerAccumulators()
+    {
+        accumulators = new ArrayList<>();
+    }
+    
+    /**
+     * Add another accumulator to be filled in by analyzeAllData,
+     * and kept up to date by refresh. Whenever it is to be filled
+     * in from the whole log again, its reset() is called first.
+     * @param accumulator The accumulator to add.
+     */
+    public void addAccumulator(LogAccumulator accumulator)
+    {
+        accumulators.add(accumulator);
+    }
+    
+    /**
+     * Return a copy of the counts, which can be saved (see
+     * LogCounts.toBytes) and merged with the counts of other logs.
+     * @return The counts.
+     */
+    public LogCounts getCounts()
+    {
+        count(ALL);
+        LogCounts copy = new LogCounts();
+        copy.add(counts);
+        return copy;
+    }
+    
+    /**
+     * Combine the counts of two analyzers. The result gives the same
+     * counts as analyzing both logs together as a single log.
+     * @param first The analyzer for one log.
+     * @param second The analyzer for another log.
+     * @return An analyzer for the combined counts.
+     */
+    public static LogAnalyzer merge(LogAnalyzer first, LogAnalyzer second)
+    {
+        return new LogAnalyzer(LogCounts.merge(first.getCounts(), second.getCounts()));
+    }
+    
+    /**
+     * Fill in every histogram, and any accumulators that have been
+     * added, with a single pass over the log file. Counts that had
+     * already been filled in are worked out again, unless the
+     * analyzer was made from counts alone, when they are kept.
+     */
+    public void analyzeAllData()
+    {
+        if(hasLog)
+        {
+            counts.clear();
+            resetAccumulators();
+            ArrayList<LogAccumulator> pass = new ArrayList<>(accumulators);
+            pass.add(counts);
+            analyze(pass.toArray(new LogAccumulator[0]));
+            counted = ALL;
+        }
         analyzeDayOfTheWeekData();
-        analyzeYearlyData();
         averageAccessesPerMonth();
     }
-
+    
     /**
-     * Analyze the hourly access data from the log file.
+     * Bring the counts up to date with any lines that have been
+     * added to the end of the log file since it was last read.
+     * Only the new lines are read, and only the counts that have
+     * been filled in so far are added to. If the log has been
+     * truncated or replaced, the counts are all forgotten, to be
+     * worked out again when they are next needed.
+     * The analyzer must have been created with ReadMode.FOLLOW.
+     * @return The number of new entries read.
+     * @throws IOException If the log file cannot be read.
      */
-    public void analyzeHourlyData()
+    public int refresh() throws IOException
+    {
+        ArrayList<LogAccumulator> pass = new ArrayList<>(accumulators);
+        pass.addAll(Arrays.asList(accumulatorsFor(counted)));
+        if(minuteCounts != null)
+        {
+            pass.add(minuteCounts);
+        }
+        int added = reader.refresh(record -> {
+            for(LogAccumulator accumulator : pass)
+            {
+                accumulator.accumulate(record);
+            }
+        });
+        if(added < 0)
+        {
+            counts.clear();
+            counted = 0;
+            minuteCounts = null;
+            resetAccumulators();
+            analyze(accumulators.toArray(new LogAccumulator[0]));
+            added = reader.getStore().size();
+        }
+        return added;
+    }
+    
+    /**
+     * Reset the accumulators that have been added, before
+     * they are filled in from the whole log again.
+     */
+    private void resetAccumulators()
     {
-        reader.reset();
-        while(reader.hasNext()) {
-            LogEntry entry = reader.next();
-            int hour = entry.getHour();
-            hourCounts[hour]++;
+        for(LogAccumulator accumulator : accumulators)
+        {
+            accumulator.reset();
         }
     }
     
     /**
-     * Analyze the daily access data from the log file.
+     * Make sure that some of the counts have been filled in,
+     * filling in any that have not with a single pass over the log.
+     * @param wanted The counts that are needed, as bits of counted.
      */
-    public void analyzeDailyData()
+    private void count(int wanted)
     {
-        reader.reset();
-        while(reader.hasNext())
+        int missing = wanted & ~counted;
+        if(missing != 0)
         {
-            LogEntry entry = reader.next();
-            int day = entry.getDay();
-            dayCounts[day-1]++;
+            recount(missing);
         }
     }
     
     /**
-     * Analyze the monthly access data from the log file
+     * Fill in some of the counts from scratch with a single pass over the log.
+     * Nothing is done if there is no log behind the counts.
+     * @param histograms The counts to fill in, as bits of counted.
      */
-    public void analyzeMonthlyData()
+    private void recount(int histograms)
     {
-        reader.reset();
-        while(reader.hasNext())
+        if(!hasLog)
+        {
+            return;
+        }
+        if((histograms & HOURS) != 0)
         {
-            LogEntry entry = reader.next();
-            int month = entry.getMonth();
-            monthCounts[month-1]++;
+            Arrays.fill(hourCounts, 0);
         }
+        if((histograms & DAYS) != 0)
+        {
+            dayCounts.clear();
+        }
+        if((histograms & MONTHS) != 0)
+        {
+            Arrays.fill(monthCounts, 0);
+        }
+        if((histograms & YEARS) != 0)
+        {
+            yearCounts.clear();
+        }
+        if((histograms & CODES) != 0)
+        {
+            codeCounts.clear();
+        }
+        analyze(accumulatorsFor(histograms));
+        counted |= histograms;
+    }
+    
+    /**
+     * @param histograms Some of the counts, as bits of counted.
+     * @return The accumulators that fill in those counts.
+     */
+    private LogAccumulator[] accumulatorsFor(int histograms)
+    {
+        if(histograms == ALL)
+        {
+            return new LogAccumulator[] { counts };
+        }
+        ArrayList<LogAccumulator> pass = new ArrayList<>();
+        if((histograms & HOURS) != 0)
+        {
+            pass.add(counts::countHour);
+        }
+        if((histograms & DAYS) != 0)
+        {
+            pass.add(counts::countDay);
+        }
+        if((histograms & MONTHS) != 0)
+        {
+            pass.add(counts::countMonth);
+        }
+        if((histograms & YEARS) != 0)
+        {
+            pass.add(counts::countYear);
+        }
+        if((histograms & CODES) != 0)
+        {
+            pass.add(codeCounts);
+        }
+        return pass.toArray(new LogAccumulator[0]);
+    }
+    
+    /**
+     * Walk the log file once and give every entry to each
+     * of the accumulators.
+     * @param pass The accumulators to fill in.
+     */
+    private void analyze(LogAccumulator... pass)
+    {
+        long startTime = LogMetrics.startTimer();
+        if(pass.length == 1)
+        {
+            reader.scan(pass[0]);
+        }
+        else
+        {
+            reader.scan(record -> {
+                for(LogAccumulator accumulator : pass)
+                {
+                    accumulator.accumulate(record);
+                }
+            });
+        }
+        LogMetrics.stopTimer(LogMetrics.Stage.AGGREGATE, startTime);
+    }
+
+    /**
+     * Analyze the hourly access data from the log file,
+     * counting it again if it has already been counted
+     * and there is a log to count it from.
+     */
+    public void analyzeHourlyData()
+    {
+        recount(HOURS);
+    }
+    
+    /**
+     * Analyze the daily access data from the log file,
+     * counting it again if it has already been counted
+     * and there is a log to count it from.
+     */
+    public void analyzeDailyData()
+    {
+        recount(DAYS);
+    }
+    
+    /**
+     * Analyze the monthly access data from the log file,
+     * counting it again if it has already been counted
+     * and there is a log to count it from.
+     */
+    public void analyzeMonthlyData()
+    {
+        recount(MONTHS);
     }
     
     /**
@@ -119,39 +475,23 @@ public class LogAnalyzer
      */
     public void analyzeDayOfTheWeekData()
     {
-        for(int i=0; dayCounts.length > i; i++)
+        count(DAYS);
+        Arrays.fill(dayOfTheWeekCounts, 0);
+        for(int day = dayCounts.getLow(); day <= dayCounts.getHigh(); day++)
         {
-            if(i < 7)
-            {
-                dayOfTheWeekCounts[i] += dayCounts[i];
-            }
-            if((i > 6) && (i < 14))
-            {
-                dayOfTheWeekCounts[i-7] += dayCounts[i];
-            }
-            if((i > 13) && (i < 21))
-            {
-                dayOfTheWeekCounts[i-14] += dayCounts[i];
-            }
-            if(i >20)
-            {
-                dayOfTheWeekCounts[i-21] += dayCounts[i];
-            }
+            // Days 1, 8, 15, 22 and 29 of a month fall on the same day of the week
+            dayOfTheWeekCounts[(day-1) % 7] += dayCounts.get(day);
         }
     }
     
     /**
-     * Analyze the yearly access data from the log file
+     * Analyze the yearly access data from the log file,
+     * counting it again if it has already been counted
+     * and there is a log to count it from.
      */
     public void analyzeYearlyData()
     {
-        reader.reset();
-        while(reader.hasNext())
-        {
-            LogEntry entry = reader.next();
-            int year = entry.getYear();
-            yearCounts[year-2015]++;
-        }
+        recount(YEARS);
     }
     
     /**
@@ -161,15 +501,21 @@ public class LogAnalyzer
      */
     public void averageAccessesPerMonth()
     {
+        count(MONTHS | YEARS);
         int numberOfYears = 0;
         
-        for(int i=0; yearCounts.length > i; i++)
+        for(int year = yearCounts.getLow(); year <= yearCounts.getHigh(); year++)
         {
-            if(yearCounts[i] > 0)
+            if(yearCounts.get(year) > 0)
             {
                 numberOfYears++;
             }
         }
+        if(numberOfYears == 0)
+        {
+            Arrays.fill(monthlyAverages, 0);
+            return;
+        }
         for(int i=0; monthlyAverages.length > i; i++)
         {
             monthlyAverages[i] = (monthCounts[i] / numberOfYears);
@@ -177,60 +523,116 @@ public class LogAnalyzer
     }
     
     /**
-     * This will take a year and then tell you what the avarge for each code was per a month
+     * This will take a year and then print how many times each code
+     * was seen in each month of it
      * @param int year for the year you want to search
      */
     public void codeCountsPerMonth(int searchYear)
     {
-        int ok = 0;
-        int notFound = 0;
-        int forbidden = 0;
-        int code = 0;
+        count(CODES);
+        int[] codes = codeCounts.getCodesSeen(searchYear);
+        if(codes.length == 0)
+        {
+            System.out.println("There are no logs in " + searchYear);
+            return;
+        }
+        if(codes.length == 1 && codes[0] == LoglineTokenizer.NO_CODE)
+        {
+            System.out.println("The log has no status codes");
+            return;
+        }
         
-        reader.reset();
-        while(reader.hasNext())
+        System.out.println("The codes in " + searchYear + " for each month are as follows.");
+        System.out.print("Code ");
+        for(int month = 1; month <= 12; month++)
         {
-            LogEntry entry = reader.next();
-            int year = entry.getYear();
-            
-            if(year == searchYear)
+            System.out.printf("%7d", month);
+        }
+        System.out.println();
+        for(int code : codes)
+        {
+            String name = Integer.toString(code);
+            if(code == LoglineTokenizer.NO_CODE)
             {
-                code = entry.getCode();
-                
-                if(code == 200)
-                {
-                    ok++;
-                }
-                else if(code == 404)
-                {
-                    notFound++;
-                }
-                else
-                {
-                    forbidden++;
-                }
+                name = "None";
             }
+            else if(code > CodeCounts.LAST_CODE)
+            {
+                name = "Other";
+            }
+            System.out.printf("%-5s", name);
+            for(int month = 1; month <= 12; month++)
+            {
+                System.out.printf("%7d", codeCounts.getCount(searchYear, month, code));
+            }
+            System.out.println();
         }
-        // for simplicity assume every year in the log has 12 months
-        // Also wont be exscat because ints but lets you a whole number how of avarges access codes
-        int okMonthlyAvg = (ok / 12);
-        int notFoundMonthlyAvg = (notFound / 12);
-        int forbiddenMonthlyAvg = (forbidden / 12);
-        
-        System.out.println("The avarge monthly codes in " + searchYear + " per a log are as follows.");
-        System.out.println("200 OK -           " + okMonthlyAvg);
-        System.out.println("404 Not Found -    " + notFoundMonthlyAvg);
-        System.out.println("403 Forbidden -    " + forbiddenMonthlyAvg);
+    }
+    
+    /**
+     * Return how many times a code was seen in a month
+     * @param year the year
+     * @param month the month (1-12)
+     * @param code the status code
+     * @return the number of logs with that code
+     */
+    public int codeCount(int year, int month, int code)
+    {
+        count(CODES);
+        return codeCounts.getCount(year, month, code);
+    }
+    
+    /**
+     * Return how many times a code was seen in a year
+     * @param year the year
+     * @param code the status code
+     * @return the number of logs with that code
+     */
+    public int codeCount(int year, int code)
+    {
+        count(CODES);
+        return codeCounts.getCount(year, code);
+    }
+    
+    /**
+     * Count the accesses in a range of times, grouped by part of
+     * the time. Only the entries in the range are looked at.
+     * For example, to count each day's accesses in March 2016:
+     *   countsBetween(LogEntry.packTime(2016, 3, 1, 0, 0),
+     *                 LogEntry.packTime(2016, 4, 1, 0, 0), TimeField.DAY)
+     * @param fromTime The packed time to start at.
+     * @param toTime The packed time to stop before.
+     * @param groupBy What to group the counts by.
+     * @return The counts, one for each slot of groupBy.
+     */
+    public int[] countsBetween(long fromTime, long toTime, TimeField groupBy)
+    {
+        int[] counts = new int[groupBy.getSlots()];
+        reader.scanRange(fromTime, toTime, record -> counts[groupBy.slotOf(record)]++);
+        return counts;
+    }
+    
+    /**
+     * Count the accesses in a range of times.
+     * @param fromTime The packed time to start at.
+     * @param toTime The packed time to stop before.
+     * @return The number of accesses in the range.
+     */
+    public int countBetween(long fromTime, long toTime)
+    {
+        int[] count = new int[1];
+        reader.scanRange(fromTime, toTime, record -> count[0]++);
+        return count[0];
     }
         
-
     /**
      * Print the hourly counts.
-     * These should have been set with a prior
-     * call to analyzeHourlyData.
+     * The hours are counted first if they
+     * have not been already.
      */
     public void printHourlyCounts()
     {
+        count(HOURS);
         System.out.println("Hr: Count");
         for(int hour = 0; hour < hourCounts.length; hour++) {
             System.out.println(hour + ": " + hourCounts[hour]);
@@ -252,6 +654,7 @@ public class LogAnalyzer
      */
     public int numberOfAccesses()
     {
+        count(HOURS);
         int total = 0;
         for(int i=0; hourCounts.length > i; i++)
         {
@@ -268,6 +671,7 @@ public class LogAnalyzer
      */
     public int busiestHour()
     {
+        count(HOURS);
         int theBusiestHour = 0;
         
         for(int i=1; hourCounts.length > i; i++)
@@ -286,6 +690,7 @@ public class LogAnalyzer
      */
     public int busiestTwoHours()
     {
+        count(HOURS);
         int theBusiestHour = 0;
         int mostNumberOfLogs = 0;
         
@@ -300,6 +705,53 @@ public class LogAnalyzer
         return theBusiestHour;
     }
     
+    /**
+     * This will find the busiest window of any number of minutes across the whole log
+     * The first time this is used the log is read once more to count each minute,
+     * after that any length of window can be found without reading it again
+     * @param minutes how many minutes the window lasts
+     * @return the packed time (see LogEntry.packTime) the window starts at, or -1 if there are no logs
+     */
+    public long busiestWindow(int minutes)
+    {
+        return countMinutes().busiestWindow(minutes);
+    }
+    
+    /**
+     * This will print when the busiest window of a number of minutes starts
+     * and how many logs are in it
+     * @param minutes how many minutes the window lasts
+     */
+    public void printBusiestWindow(int minutes)
+    {
+        long start = busiestWindow(minutes);
+        if(start < 0)
+        {
+            System.out.println("There are no logs");
+            return;
+        }
+        long record = LogEntry.recordAt(start);
+        System.out.printf("The busiest %d minutes start at %d/%02d/%02d %02d:%02d with %d logs%n",
+                          minutes, LogEntry.yearOf(record), LogEntry.monthOf(record),
+                          LogEntry.dayOf(record), LogEntry.hourOf(record),
+                          LogEntry.minuteOf(record), minuteCounts.countInWindow(start, minutes));
+    }
+    
+    /**
+     * Count the logs in each minute, if that has not been done yet.
+     * Once counted, the minutes are kept up to date by refresh.
+     * @return the counts for each minute
+     */
+    private MinuteSeries countMinutes()
+    {
+        if(minuteCounts == null)
+        {
+            minuteCounts = new MinuteSeries();
+            analyze(minuteCounts);
+        }
+        return minuteCounts;
+    }
+    
     /**
      * This will return the quietest hour if there are multiple hours with the same ammount of logs
      * only the first quietest hour will be returned
@@ -307,6 +759,7 @@ public class LogAnalyzer
      */
     public int quietestHour()
     {
+        count(HOURS);
         int theQuietestHour = 0;
         
         for(int i=1; hourCounts.length > i; i++)
@@ -325,6 +778,7 @@ public class LogAnalyzer
      */
     public void printBusiestHour()
     {
+        count(HOURS);
         int theBusiestHour = 0;
         boolean multipleBusiestHours = false;
         
@@ -361,39 +815,49 @@ public class LogAnalyzer
     /**
      * This will return the day with the most ammount of total logs from all months
      * if there is more then one day with the same ammount of logs only the first will be returned
-     * @return the day with the most ammount of total logs
+     * @return the day with the most ammount of total logs, or -1 if the log is empty
      */
     public int busiestDay()
     {
-        int theBusiestDay = 0;
+        count(DAYS);
+        if(dayCounts.isEmpty())
+        {
+            return -1;
+        }
+        int theBusiestDay = dayCounts.getLow();
         
-        for(int i=1; dayCounts.length > i; i++)
+        for(int day = theBusiestDay + 1; dayCounts.getHigh() >= day; day++)
         {
-            if(dayCounts[i] > dayCounts[theBusiestDay])
+            if(dayCounts.get(day) > dayCounts.get(theBusiestDay))
             {
-                theBusiestDay = i;
+                theBusiestDay = day;
             }
         }
-        return (theBusiestDay + 1);
+        return theBusiestDay;
     }
     
     /**
      * This will return the day with the least ammount of total logs from all months
      * if there is more then one day with the same ammount of logs only the first will be returned
-     * @return the day with the least ammount of total logs
+     * @return the day with the least ammount of total logs, or -1 if the log is empty
      */
     public int quietestDay()
     {
-        int theQuiestestDay = 0;
+        count(DAYS);
+        if(dayCounts.isEmpty())
+        {
+            return -1;
+        }
+        int theQuiestestDay = dayCounts.getLow();
         
-        for(int i=1; dayCounts.length > i; i++)
+        for(int day = theQuiestestDay + 1; dayCounts.getHigh() >= day; day++)
         {
-            if(dayCounts[i] < dayCounts[theQuiestestDay])
+            if(dayCounts.get(day) < dayCounts.get(theQuiestestDay))
             {
-                theQuiestestDay = i;
+                theQuiestestDay = day;
             }
         }
-        return (theQuiestestDay + 1);
+        return theQuiestestDay;
     }
     
     /**
@@ -403,6 +867,7 @@ public class LogAnalyzer
      */
     public int busiestMonth()
     {
+        count(MONTHS);
         int theBusiestMonth = 0;
         
         for(int i=1; monthCounts.length > i; i++)
@@ -422,6 +887,7 @@ public class LogAnalyzer
      */
     public int quietestMonth()
     {
+        count(MONTHS);
         int theQuietestMonth = 0;
         
         for(int i=1; monthCounts.length > i; i++)
@@ -0,0 +1,190 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Analyze a whole set of log files as one, such as a directory of
+ * rotated logs (weblog.txt.1, weblog.txt.2, ...). Each file is read
+ * and counted as a separate task on a fork/join pool, and the counts
+ * for the files are then merged (see LogCounts). The result is the
+ * same as analyzing all of the files joined together.
+ *
+ * The files can be given as a directory, whose files are all read,
+ * or as a glob pattern for the file names, such as "logs/weblog.txt.*".
+ * A file that cannot be read is reported and left out of the counts.
+ *
+ * @author Steve Cate
+ * @version    10/17/26
+ */
+public class LogBatch
+{
+    // The files to analyze.
+    private List<File> files;
+    // How each file is read.
+    private ReadMode mode;
+    // The pool that reads the files.
+    private ForkJoinPool pool;
+    // The files that could not be read by the last analysis.
+    private List<File> failedFiles;
+
+    /**
+     * Create a batch of the log files in a directory or matching a
+     * glob pattern, to be read in MAPPED mode on the common pool.
+     * @param location A directory, a glob pattern or a single file.
+     * @throws FileNotFoundException If there are no such files.
+     */
+    public LogBatch(String location) throws FileNotFoundException
+    {
+        this(location, ReadMode.MAPPED, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Create a batch of the log files in a directory or matching a
+     * glob pattern.
+     * @param location A directory, a glob pattern or a single file.
+     * @param mode How each file is read. STREAM and FOLLOW are
+     *             treated as LOAD, since the whole of every file is read.
+     * @param pool The pool to read the files on.
+     * @throws FileNotFoundException If there are no such files.
+     */
+    public LogBatch(String location, ReadMode mode, ForkJoinPool pool)
+        throws FileNotFoundException
+    {
+        files = findFiles(location);
+        if(files.isEmpty()) {
+            throw new FileNotFoundException("No log files at " + location);
+        }
+        this.mode = (mode == ReadMode.STREAM || mode == ReadMode.FOLLOW) ? ReadMode.LOAD : mode;
+        this.pool = pool;
+        failedFiles = new ArrayList<>();
+    }
+
+    /**
+     * @return The files in the batch, in order of name.
+     */
+    public List<File> getFiles()
+    {
+        return files;
+    }
+
+    /**
+     * @return The files that could not be read by the last analysis.
+     */
+    public List<File> getFailedFiles()
+    {
+        return failedFiles;
+    }
+
+    /**
+     * Count every file in the batch, and merge the counts.
+     * @return The counts for all of the files together.
+     */
+    public LogCounts count()
+    {
+        List<ForkJoinTask<LogCounts>> tasks = new ArrayList<>();
+        for(File file : files) {
+            tasks.add(pool.submit(() -> countFile(file)));
+        }
+        LogCounts total = new LogCounts();
+        failedFiles = new ArrayList<>();
+        for(int i = 0; i < tasks.size(); i++) {
+            LogCounts counts = tasks.get(i).join();
+            if(counts != null) {
+                total.add(counts);
+            }
+            else {
+                failedFiles.add(files.get(i));
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Analyze every file in the batch as one log.
+     * @return An analyzer for the merged counts of the files.
+     */
+    public LogAnalyzer analyze()
+    {
+        return new LogAnalyzer(count());
+    }
+
+    /**
+     * Read and count a single file.
+     * @param file The file.
+     * @return The counts for the file, or null if it could not be read.
+     */
+    private LogCounts countFile(File file)
+    {
+        try {
+            LogfileReader reader = new LogfileReader(file.getPath(), mode);
+            if(reader.getFile() == null) {
+                // The reader fell back on simulated data.
+                return null;
+            }
+            LogCounts counts = new LogCounts();
+            reader.scan(counts);
+            return counts;
+        }
+        catch(RuntimeException e) {
+            System.out.println("Problem encountered in " + file + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Find the files that a location stands for.
+     * @param location A directory, a glob pattern or a single file.
+     *                 Only the last part of a pattern may hold wildcards.
+     * @return The files, in order of name. Rollups and other files
+     *         kept alongside logs are always left out, even when a
+     *         pattern or the location itself names them.
+     */
+    public static List<File> findFiles(String location)
+    {
+        File file = new File(location);
+        File[] found;
+        if(file.isDirectory()) {
+            found = file.listFiles(File::isFile);
+        }
+        else if(file.isFile()) {
+            found = new File[] { file };
+        }
+        else {
+            File directory = file.getAbsoluteFile().getParentFile();
+            PathMatcher matcher =
+                FileSystems.getDefault().getPathMatcher("glob:" + file.getName());
+            found = directory.listFiles(f -> f.isFile() &&
+                                             matcher.matches(Paths.get(f.getName())));
+        }
+        List<File> files = new ArrayList<>();
+        if(found == null) {
+            return files;
+        }
+        Arrays.sort(found);
+        for(File each : found) {
+            if(!isSidecar(each)) {
+                files.add(each);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * @param file A file.
+     * @return true if the file is kept alongside a log rather than being one.
+     */
+    private static boolean isSidecar(File file)
+    {
+        String name = file.getName();
+        return name.startsWith(".") || name.endsWith(".rollup") || name.endsWith(".tmp") ||
+               name.endsWith(LogErrorPolicy.QUARANTINE_SUFFIX);
+    }
+}
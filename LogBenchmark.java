@@ -0,0 +1,382 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Random;
+import java.util.Scanner;
+
+/**
+ * Measure how quickly the classes of the project handle log data.
+ * Each benchmark runs a few warm-up rounds before the timed rounds
+ * and prints the mean time per line with its standard deviation,
+ * the throughput, and the rate and amount of memory allocated,
+ * where the JVM is able to report it. Only allocations made by the
+ * thread running the benchmark are counted.
+ *
+ * runSuite() covers the tokenizer, LogEntry creation, every way of
+ * loading a file through LogfileReader, sorting, and each of the
+ * LogAnalyzer analyze methods, using a generated log of a given size.
+ * From the command line, give the log sizes to use, for example:
+ *
+ *    java LogBenchmark 10000 1000000 100000000
+ *
+ * @author Steve Cate
+ * @version    10/17/26
+ */
+public class LogBenchmark
+{
+    // The largest number of lines held in memory as Strings for
+    // the tokenizer and LogEntry benchmarks.
+    private static final int MAX_SAMPLE_LINES = 1000000;
+    // The Scanner is so slow that it only gets a smaller sample.
+    private static final int MAX_SCANNER_LINES = 20000;
+    // Inputs with at least this many lines get fewer rounds.
+    private static final long LARGE_INPUT_LINES = 10000000;
+    // How many sorted runs the run-merging sort benchmark joins together.
+    private static final int SORTED_RUNS = 8;
+
+    // Used to make the random log lines.
+    private LogfileCreator creator;
+    // How many untimed rounds to run before measuring.
+    private int warmupRounds;
+    // How many rounds to measure.
+    private int timedRounds;
+    // Collects results so that the work being timed is not optimized away.
+    private long sink;
+
+    /**
+     * Create a benchmark.
+     */
+    public LogBenchmark()
+    {
+        creator = new LogfileCreator();
+        warmupRounds = 5;
+        timedRounds = 10;
+    }
+
+    /**
+     * Change how many times each benchmark is run.
+     * @param warmupRounds How many untimed rounds to run first.
+     * @param timedRounds How many rounds to measure.
+     */
+    public void setRounds(int warmupRounds, int timedRounds)
+    {
+        if(warmupRounds < 0 || timedRounds < 1) {
+            throw new IllegalArgumentException("Need at least one timed round");
+        }
+        this.warmupRounds = warmupRounds;
+        this.timedRounds = timedRounds;
+    }
+
+    /**
+     * Run every benchmark against a generated, sorted log of the
+     * given size. The log is made with LogfileCreator the first time,
+     * next to the project's classes so that LogfileReader can find it,
+     * and kept for later runs.
+     * @param numLines How many lines the log should have.
+     */
+    public void runSuite(long numLines)
+    {
+        String filename = "benchmark-" + numLines + ".txt";
+        File file = new File(classDirectory(), filename);
+        if(!file.isFile() && !creator.createSortedFile(file.getPath(), numLines)) {
+            return;
+        }
+        if(numLines >= LARGE_INPUT_LINES) {
+            setRounds(1, 3);
+        }
+        System.out.println("=== " + numLines + " lines, " + file.length() + " bytes ===");
+        int sampleLines = (int) Math.min(numLines, MAX_SAMPLE_LINES);
+        benchmarkTokenizer(sampleLines);
+        benchmarkLogEntry(sampleLines);
+        benchmarkReaders(filename);
+        benchmarkStoreSort(new LogfileReader(filename, ReadMode.MAPPED).getStore());
+        benchmarkAnalyzer(filename);
+    }
+
+    /**
+     * Compare the tokenizer with tokenizing through a Scanner,
+     * which is how LoglineTokenizer used to work.
+     * @param numLines How many random log lines to tokenize in each round.
+     */
+    public void benchmarkTokenizer(int numLines)
+    {
+        String[] lines = new String[numLines];
+        for(int i = 0; i < numLines; i++) {
+            lines[i] = creator.createEntry().toString();
+        }
+        int[] dataLine = new int[6];
+        LoglineTokenizer tokenizer = new LoglineTokenizer();
+
+        int scannerLines = Math.min(numLines, MAX_SCANNER_LINES);
+        report("Scanner tokenize", scannerLines, () -> {
+            for(int i = 0; i < scannerLines; i++) {
+                scannerTokenize(lines[i], dataLine);
+                sink += dataLine[5];
+            }
+        });
+        report("LoglineTokenizer", numLines, () -> {
+            for(String line : lines) {
+                tokenizer.tokenize(line, dataLine);
+                sink += dataLine[5];
+            }
+        });
+    }
+
+    /**
+     * Measure creating LogEntry objects from log lines.
+     * @param numLines How many random log lines to use in each round.
+     */
+    public void benchmarkLogEntry(int numLines)
+    {
+        String[] lines = new String[numLines];
+        for(int i = 0; i < numLines; i++) {
+            lines[i] = creator.createEntry().toString();
+        }
+
+        report("new LogEntry(String)", numLines, () -> {
+            for(String line : lines) {
+                sink += new LogEntry(line).getRecord();
+            }
+        });
+    }
+
+    /**
+     * Measure sorting the records of a store after they have
+     * been shuffled, as LogfileReader does for unsorted files,
+     * and after they have been made into several sorted runs.
+     * @param store The records to use. They are shuffled.
+     */
+    public void benchmarkStoreSort(LogStore store)
+    {
+        long[] records = store.toArray();
+        Random random = new Random(42);
+        for(int i = records.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            long swap = records[i];
+            records[i] = records[j];
+            records[j] = swap;
+        }
+
+        report("LogStore sort", records.length, () -> {
+            LogStore data = new LogStore();
+            for(long record : records) {
+                data.add(record);
+            }
+            data.sort();
+            sink += data.get(0);
+        });
+
+        // As though several sorted logs had been joined together.
+        long[] runs = records.clone();
+        int runLength = (runs.length + SORTED_RUNS - 1) / SORTED_RUNS;
+        for(int start = 0; start < runs.length; start += runLength) {
+            Arrays.sort(runs, start, Math.min(runs.length, start + runLength));
+        }
+        report("LogStore sort (" + SORTED_RUNS + " runs)", runs.length, () -> {
+            LogStore data = new LogStore();
+            for(long record : runs) {
+                data.add(record);
+            }
+            data.sort();
+            sink += data.get(0);
+        });
+    }
+
+    /**
+     * Measure each of the LogAnalyzer analyze methods on a loaded file.
+     * @param filename The log file to analyze.
+     */
+    public void benchmarkAnalyzer(String filename)
+    {
+        LogAnalyzer analyzer = new LogAnalyzer(filename);
+        long numLines = analyzer.numberOfAccesses();
+
+        report("analyzeHourlyData", numLines, analyzer::analyzeHourlyData);
+        report("analyzeDailyData", numLines, analyzer::analyzeDailyData);
+        report("analyzeMonthlyData", numLines, analyzer::analyzeMonthlyData);
+        report("analyzeYearlyData", numLines, analyzer::analyzeYearlyData);
+        report("analyzeAllData", numLines, analyzer::analyzeAllData);
+    }
+
+    /**
+     * Compare sorting entries by their packed times with sorting
+     * by a Calendar for each entry, which is how LogEntry used to
+     * compare itself.
+     * @param numEntries How many random entries to sort in each round.
+     */
+    public void benchmarkSort(int numEntries)
+    {
+        ArrayList<LogEntry> entries = new ArrayList<>();
+        ArrayList<Calendar> calendars = new ArrayList<>();
+        for(int i = 0; i < numEntries; i++) {
+            LogEntry entry = creator.createEntry();
+            entries.add(entry);
+            calendars.add(entry.getCalendar());
+        }
+
+        report("Calendar sort", numEntries, () -> {
+            ArrayList<Calendar> data = new ArrayList<>(calendars);
+            Collections.sort(data);
+            sink += data.size();
+        });
+        report("LogEntry sort", numEntries, () -> {
+            ArrayList<LogEntry> data = new ArrayList<>(entries);
+            Collections.sort(data);
+            sink += data.size();
+        });
+    }
+
+    /**
+     * Compare how quickly each ReadMode reads a log file, in MB/s.
+     * @param filename The log file to read.
+     */
+    public void benchmarkReaders(String filename)
+    {
+        File file;
+        try {
+            file = LogfileReader.locateFile(filename);
+        }
+        catch(FileNotFoundException | URISyntaxException e) {
+            System.out.println("Cannot benchmark simulated data.");
+            return;
+        }
+        // Count the lines in a single pass, without keeping them.
+        long[] numLines = new long[1];
+        new LogfileReader(filename, ReadMode.STREAM).scan(record -> numLines[0]++);
+        for(ReadMode mode : ReadMode.values()) {
+            report("Read " + mode, numLines[0], file.length(), () -> {
+                LogfileReader reader = new LogfileReader(filename, mode);
+                reader.scan(record -> sink += record);
+            });
+        }
+    }
+
+    /**
+     * Tokenize a line the way LoglineTokenizer used to, for comparison.
+     * @param logline The line to be tokenized.
+     * @param dataLine Where to store the values.
+     */
+    private static void scannerTokenize(String logline, int[] dataLine)
+    {
+        Scanner tokenizer = new Scanner(logline);
+        for(int i = 0; i < dataLine.length; i++) {
+            dataLine[i] = tokenizer.nextInt();
+        }
+    }
+
+    /**
+     * Run a piece of work for the warm-up and timed rounds and print
+     * how long it took and how much it allocated per line.
+     * @param name What is being measured.
+     * @param numLines How many lines each round handles.
+     * @param work The work for one round.
+     */
+    private void report(String name, long numLines, Runnable work)
+    {
+        report(name, numLines, 0, work);
+    }
+
+    /**
+     * Run a piece of work for the warm-up and timed rounds and print
+     * how long it took and how much it allocated per line.
+     * @param name What is being measured.
+     * @param numLines How many lines each round handles.
+     * @param numBytes How many bytes of log each round reads, or 0
+     *                 if the throughput in MB/s is not wanted.
+     * @param work The work for one round.
+     */
+    private void report(String name, long numLines, long numBytes, Runnable work)
+    {
+        for(int i = 0; i < warmupRounds; i++) {
+            work.run();
+        }
+        long[] times = new long[timedRounds];
+        long allocatedBefore = allocatedBytes();
+        for(int i = 0; i < timedRounds; i++) {
+            long start = System.nanoTime();
+            work.run();
+            times[i] = System.nanoTime() - start;
+        }
+        long allocatedAfter = allocatedBytes();
+
+        // The mean and standard deviation of the time per line.
+        long elapsed = 0;
+        for(long time : times) {
+            elapsed += time;
+        }
+        double mean = (double) elapsed / timedRounds / numLines;
+        double squares = 0;
+        for(long time : times) {
+            double difference = (double) time / numLines - mean;
+            squares += difference * difference;
+        }
+        double deviation = Math.sqrt(squares / timedRounds);
+
+        long totalLines = numLines * timedRounds;
+        double linesPerSecond = totalLines * 1e9 / elapsed;
+        String line = String.format("%-24s %10.1f +/- %-8.1f ns/line %14.0f lines/s",
+                                    name, mean, deviation, linesPerSecond);
+        if(numBytes > 0) {
+            double megabytes = (double) numBytes * timedRounds / (1 << 20);
+            line += String.format(" %8.1f MB/s", megabytes * 1e9 / elapsed);
+        }
+        if(allocatedBefore >= 0) {
+            long allocated = allocatedAfter - allocatedBefore;
+            line += String.format(" %10.1f B/line %8.1f MB/s alloc",
+                                  (double) allocated / totalLines,
+                                  allocated * 1e9 / elapsed / (1 << 20));
+        }
+        System.out.println(line);
+    }
+
+    /**
+     * @return The directory the project's classes are loaded from.
+     */
+    private static File classDirectory()
+    {
+        try {
+            return new File(LogBenchmark.class.getProtectionDomain()
+                                .getCodeSource().getLocation().toURI());
+        }
+        catch(URISyntaxException e) {
+            return new File(".");
+        }
+    }
+
+    /**
+     * @return How many bytes the current thread has allocated,
+     *         or a negative value if the JVM cannot say.
+     */
+    private static long allocatedBytes()
+    {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if(threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunThreads =
+                (com.sun.management.ThreadMXBean) threads;
+            if(sunThreads.isThreadAllocatedMemorySupported() &&
+               sunThreads.isThreadAllocatedMemoryEnabled()) {
+                return sunThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Run the benchmark suite from the command line.
+     * @param args The numbers of lines of log to run the suite with.
+     *             If none are given, 10000 and 1000000 are used.
+     */
+    public static void main(String[] args)
+    {
+        String[] sizes = args.length > 0 ? args : new String[] { "10000", "1000000" };
+        for(String size : sizes) {
+            new LogBenchmark().runSuite(Long.parseLong(size));
+        }
+    }
+}
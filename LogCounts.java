@@ -0,0 +1,334 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * The counts that a LogAnalyzer works out from a log: accesses by
+ * hour, day, month and year, and status codes by month. Every count
+ * is a simple total, so the counts for two logs can be added together
+ * to give exactly the counts for both logs as one. This lets logs be
+ * analyzed separately, even on different machines, and the results
+ * combined without moving the log lines themselves.
+ *
+ * The counts can be saved as a compact block of bytes, or a file.
+ * Run main to analyze a log into a counts file, or to combine counts
+ * files, from the command line.
+ *
+ * @author Steve Cate
+ * @version    10/17/26
+ */
+public class LogCounts implements LogAccumulator
+{
+    // The first bytes of saved counts: "WLOGCNTS".
+    private static final long MAGIC = 0x574C4F47434E5453L;
+    // The version of the saved format.
+    private static final int VERSION = 2;
+
+    // The accesses in each hour of the day.
+    private int[] hourCounts;
+    // The accesses on each day of the month.
+    private RangeHistogram dayCounts;
+    // The accesses in each month.
+    private int[] monthCounts;
+    // The accesses in each year.
+    private RangeHistogram yearCounts;
+    // Each status code for each month of each year.
+    private CodeCounts codeCounts;
+
+    /**
+     * Create a set of counts that are all zero.
+     */
+    public LogCounts()
+    {
+        hourCounts = new int[24];
+        dayCounts = new RangeHistogram(1, 31);
+        monthCounts = new int[12];
+        yearCounts = new RangeHistogram(0, LogEntry.MAX_YEAR);
+        codeCounts = new CodeCounts();
+    }
+
+    /**
+     * Count an entry in all of the counts.
+     * @param record The entry to count, as a packed record.
+     */
+    public void accumulate(long record)
+    {
+        countHour(record);
+        countDay(record);
+        countMonth(record);
+        countYear(record);
+        codeCounts.accumulate(record);
+    }
+
+    /**
+     * Count an entry in the hourly access counts.
+     * @param record The entry to count, as a packed record.
+     */
+    public void countHour(long record)
+    {
+        hourCounts[LogEntry.hourOf(record)]++;
+    }
+
+    /**
+     * Count an entry in the daily access counts.
+     * @param record The entry to count, as a packed record.
+     */
+    public void countDay(long record)
+    {
+        dayCounts.increment(LogEntry.dayOf(record));
+    }
+
+    /**
+     * Count an entry in the monthly access counts.
+     * @param record The entry to count, as a packed record.
+     */
+    public void countMonth(long record)
+    {
+        monthCounts[LogEntry.monthOf(record) - 1]++;
+    }
+
+    /**
+     * Count an entry in the yearly access counts.
+     * @param record The entry to count, as a packed record.
+     */
+    public void countYear(long record)
+    {
+        yearCounts.increment(LogEntry.yearOf(record));
+    }
+
+    /**
+     * @return The accesses in each hour of the day.
+     */
+    public int[] getHourCounts()
+    {
+        return hourCounts;
+    }
+
+    /**
+     * @return The accesses on each day of the month.
+     */
+    public RangeHistogram getDayCounts()
+    {
+        return dayCounts;
+    }
+
+    /**
+     * @return The accesses in each month (January first).
+     */
+    public int[] getMonthCounts()
+    {
+        return monthCounts;
+    }
+
+    /**
+     * @return The accesses in each year.
+     */
+    public RangeHistogram getYearCounts()
+    {
+        return yearCounts;
+    }
+
+    /**
+     * @return Each status code for each month of each year.
+     */
+    public CodeCounts getCodeCounts()
+    {
+        return codeCounts;
+    }
+
+    /**
+     * Add another set of counts to these, as though the other
+     * log had been added to the end of this one.
+     * @param other The counts to add.
+     */
+    public void add(LogCounts other)
+    {
+        for(int i = 0; i < hourCounts.length; i++) {
+            hourCounts[i] += other.hourCounts[i];
+        }
+        dayCounts.add(other.dayCounts);
+        for(int i = 0; i < monthCounts.length; i++) {
+            monthCounts[i] += other.monthCounts[i];
+        }
+        yearCounts.add(other.yearCounts);
+        codeCounts.add(other.codeCounts);
+    }
+
+    /**
+     * Combine two sets of counts, leaving both unchanged.
+     * @param first The counts for one log.
+     * @param second The counts for another log.
+     * @return The counts for both logs together.
+     */
+    public static LogCounts merge(LogCounts first, LogCounts second)
+    {
+        LogCounts merged = new LogCounts();
+        merged.add(first);
+        merged.add(second);
+        return merged;
+    }
+
+    /**
+     * Set all of the counts back to zero. The arrays and
+     * histograms themselves are kept.
+     */
+    public void clear()
+    {
+        for(int i = 0; i < hourCounts.length; i++) {
+            hourCounts[i] = 0;
+        }
+        dayCounts.clear();
+        for(int i = 0; i < monthCounts.length; i++) {
+            monthCounts[i] = 0;
+        }
+        yearCounts.clear();
+        codeCounts.clear();
+    }
+
+    /**
+     * Set all of the counts back to zero, as clear() does.
+     */
+    public void reset()
+    {
+        clear();
+    }
+
+    /**
+     * Write the counts out.
+     * @param output Where to write the counts.
+     * @throws IOException If the counts cannot be written.
+     */
+    public void writeTo(DataOutputStream output) throws IOException
+    {
+        output.writeLong(MAGIC);
+        output.writeInt(VERSION);
+        for(int count : hourCounts) {
+            output.writeInt(count);
+        }
+        dayCounts.writeTo(output);
+        for(int count : monthCounts) {
+            output.writeInt(count);
+        }
+        yearCounts.writeTo(output);
+        codeCounts.writeTo(output);
+    }
+
+    /**
+     * Read counts written by writeTo.
+     * @param input Where to read the counts from.
+     * @return The counts.
+     * @throws IOException If the counts cannot be read, or
+     *         were not written by writeTo.
+     */
+    public static LogCounts readFrom(DataInputStream input) throws IOException
+    {
+        if(input.readLong() != MAGIC) {
+            throw new IOException("Not a set of log counts");
+        }
+        int version = input.readInt();
+        if(version != VERSION) {
+            throw new IOException("Unknown log counts version: " + version);
+        }
+        LogCounts counts = new LogCounts();
+        for(int i = 0; i < counts.hourCounts.length; i++) {
+            counts.hourCounts[i] = input.readInt();
+        }
+        counts.dayCounts = RangeHistogram.readFrom(input, 1, 31);
+        for(int i = 0; i < counts.monthCounts.length; i++) {
+            counts.monthCounts[i] = input.readInt();
+        }
+        counts.yearCounts = RangeHistogram.readFrom(input, 0, LogEntry.MAX_YEAR);
+        counts.codeCounts = CodeCounts.readFrom(input);
+        return counts;
+    }
+
+    /**
+     * @return The counts as a block of bytes.
+     */
+    public byte[] toBytes()
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            writeTo(output);
+        }
+        catch(IOException e) {
+            // Writing to memory cannot fail.
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param bytes Counts saved by toBytes.
+     * @return The counts.
+     * @throws IOException If the bytes do not hold a set of counts.
+     */
+    public static LogCounts fromBytes(byte[] bytes) throws IOException
+    {
+        return readFrom(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    /**
+     * Save the counts to a file.
+     * @param file The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public void write(File file) throws IOException
+    {
+        try (DataOutputStream output = new DataOutputStream(
+                 new BufferedOutputStream(new FileOutputStream(file)))) {
+            writeTo(output);
+        }
+    }
+
+    /**
+     * Read counts saved by write.
+     * @param file The file to read.
+     * @return The counts.
+     * @throws IOException If the file cannot be read.
+     */
+    public static LogCounts read(File file) throws IOException
+    {
+        try (DataInputStream input = new DataInputStream(
+                 new BufferedInputStream(new FileInputStream(file)))) {
+            return readFrom(input);
+        }
+    }
+
+    /**
+     * Analyze a log into a counts file, or combine counts files.
+     *   java LogCounts log-file counts-file
+     *   java LogCounts -merge counts-file...
+     * Combining prints the busiest hour, day and month of all
+     * the logs together.
+     * @param args The command line arguments, as above.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if(args.length >= 2 && args[0].equals("-merge")) {
+            LogCounts total = new LogCounts();
+            for(int i = 1; i < args.length; i++) {
+                total.add(read(new File(args[i])));
+            }
+            LogAnalyzer analyzer = new LogAnalyzer(total);
+            System.out.println("Accesses: " + analyzer.numberOfAccesses());
+            System.out.println("Busiest hour: " + analyzer.busiestHour());
+            System.out.println("Busiest day: " + analyzer.busiestDay());
+            System.out.println("Busiest month: " + analyzer.busiestMonth());
+        }
+        else if(args.length == 2) {
+            new LogAnalyzer(args[0]).getCounts().write(new File(args[1]));
+        }
+        else {
+            System.out.println("Usage: java LogCounts log-file counts-file");
+            System.out.println("       java LogCounts -merge counts-file...");
+        }
+    }
+}
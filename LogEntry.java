@@ -1,3 +1,4 @@
+import java.time.LocalDateTime;
 import java.util.Calendar;
 
 /**
@@ -5,19 +6,22 @@ import java.util.Calendar;
  * web-server log file.
  * Individual fields are made available via
  * accessors such as getHour() and getMinute().
- * 
+ *
+ * All of the fields are packed into a single long value, the
+ * record. Records are how a LogStore holds its data, and a
+ * LogEntry is simply a view of one record. The static methods
+ * such as hourOf() read the fields of a record directly.
+ *
  * @author David J. Barnes and Michael Kölling.
  * @version    2016.02.29
  */
 public class LogEntry implements Comparable<LogEntry>
 {
-    // Where the data values extracted from a single
-    // log line are stored.
-    private int[] dataValues;
-    // The equivalent Calendar object for the log time.
-    private Calendar when;
+    // The data values extracted from a single
+    // log line, packed into one value.
+    private final long record;
     
-    // At which index in dataValues the different fields
+    // At which index in a data array the different fields
     // from a log line are stored.
     private static final int YEAR = 0, MONTH = 1, DAY = 2,
                              HOUR = 3, MINUTE = 4, CODE = 5;
@@ -25,22 +29,41 @@ public class LogEntry implements Comparable<LogEntry>
     // seconds or a status code, then this value must be increased
     // to match.
     private static final int NUMBER_OF_FIELDS = 6;
-                      
+    // A tokenizer without a LogParseState judges each line on its
+    // own, so one can be shared by every entry. It does reuse a
+    // buffer for the line, so entries take turns with it.
+    private static final LoglineTokenizer TOKENIZER = new LoglineTokenizer();
+    
+    // How far along the record each field is shifted. Each field
+    // has enough bits for its largest value, with the date/time
+    // fields above the code, so records sort in date order.
+    private static final int YEAR_SHIFT = 36, MONTH_SHIFT = 32,
+                             DAY_SHIFT = 27, HOUR_SHIFT = 22,
+                             MINUTE_SHIFT = 16, CODE_SHIFT = 0;
+    // The largest value that each field can hold.
+    private static final int MAX_MONTH = 0xF, MAX_DAY = 0x1F, MAX_HOUR = 0x1F,
+                             MAX_MINUTE = 0x3F, MAX_CODE = 0xFFFF;
+    // The latest year an entry can have.
+    public static final int MAX_YEAR = 9999;
+    // Where the date/time starts in a record.
+    private static final int TIME_SHIFT = MINUTE_SHIFT;
+    
     /**
      * Decompose a log line so that the individual fields
      * are available.
      * @param logline A single line from the log.
      *                This should be in the format:
-     *                year month day hour minute etc.
+     *                year month day hour minute [code]
      */
     public LogEntry(String logline)
     {
         // The array to store the data for a single line.
-        dataValues = new int[NUMBER_OF_FIELDS];
+        int[] dataValues = new int[NUMBER_OF_FIELDS];
         // Break up the log line.
-        LoglineTokenizer tokenizer = new LoglineTokenizer();
-        tokenizer.tokenize(logline,dataValues);
-        setWhen();
+        synchronized(TOKENIZER) {
+            TOKENIZER.tokenize(logline,dataValues);
+        }
+        record = pack(dataValues);
     }
     
     /**
@@ -50,18 +73,20 @@ public class LogEntry implements Comparable<LogEntry>
      * @param day The day (1-31)
      * @param hour The hour (0-23)
      * @param minute The minute (0-59)
+     * @param code The status code
      */
     public LogEntry(int year, int month, int day, int hour, int minute, int code)
     {
-        // The array to store the data for a single line.
-        dataValues = new int[NUMBER_OF_FIELDS];
-        dataValues[YEAR] = year;
-        dataValues[MONTH] = month;
-        dataValues[DAY] = day;
-        dataValues[HOUR] = hour;
-        dataValues[MINUTE] = minute;
-        dataValues[CODE] = code;
-        setWhen();
+        record = pack(year, month, day, hour, minute, code);
+    }
+    
+    /**
+     * Create a LogEntry to view a packed record.
+     * @param record The record, as made by pack().
+     */
+    public LogEntry(long record)
+    {
+        this.record = record;
     }
     
     /**
@@ -70,16 +95,16 @@ public class LogEntry implements Comparable<LogEntry>
      */
     public int getHour()
     {
-        return dataValues[HOUR];
+        return hourOf(record);
     }
-
+    
     /**
      * Return the minute.
      * @return The minute field from the log line.
      */
     public int getMinute()
     {
-        return dataValues[MINUTE];
+        return minuteOf(record);
     }
     
     /**
@@ -88,7 +113,7 @@ public class LogEntry implements Comparable<LogEntry>
      */
     public int getDay()
     {
-        return dataValues[DAY];
+        return dayOf(record);
     }
     
     /**
@@ -97,7 +122,7 @@ public class LogEntry implements Comparable<LogEntry>
      */
     public int getMonth()
     {
-        return dataValues[MONTH];
+        return monthOf(record);
     }
     
     /**
@@ -106,7 +131,7 @@ public class LogEntry implements Comparable<LogEntry>
      */
     public int getYear()
     {
-        return dataValues[YEAR];
+        return yearOf(record);
     }
     
     /**
@@ -115,7 +140,16 @@ public class LogEntry implements Comparable<LogEntry>
      */
     public int getCode()
     {
-        return dataValues[CODE];
+        return codeOf(record);
+    }
+    
+    /**
+     * Return all of the fields packed into a single value.
+     * @return The packed record.
+     */
+    public long getRecord()
+    {
+        return record;
     }
     
     /**
@@ -126,6 +160,8 @@ public class LogEntry implements Comparable<LogEntry>
      */
     public String toString()
     {
+        int[] dataValues = { getYear(), getMonth(), getDay(),
+                             getHour(), getMinute(), getCode() };
         StringBuffer buffer = new StringBuffer();
         for(int value : dataValues) {
            // Prefix a leading zero on single digit numbers.
@@ -149,29 +185,203 @@ public class LogEntry implements Comparable<LogEntry>
      */
     public int compareTo(LogEntry otherEntry)
     {
-        // Use the equivalent Calendars comparison method.
-        return when.compareTo(otherEntry.getWhen());
+        return Long.compare(getTimestamp(), otherEntry.getTimestamp());
     }
     
     /**
-     * Return the Calendar object representing this event.
-     * @return The Calendar for this event.
+     * Return the date and time of this entry packed into a
+     * single value. Packed times are in the same order as the
+     * date/times they represent.
+     * @return The packed time.
      */
-    private Calendar getWhen()
+    public long getTimestamp()
     {
-        return when;
+        return timeOf(record);
     }
-
+    
+    /**
+     * Create a Calendar object representing this event.
+     * @return A Calendar for this event.
+     */
+    public Calendar getCalendar()
+    {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        // Adjust from 1-based month to 0-based.
+        calendar.set(getYear(), getMonth() - 1, getDay(),
+                     getHour(), getMinute());
+        return calendar;
+    }
+    
+    /**
+     * Create a LocalDateTime representing this event.
+     * @return The date and time of this event.
+     */
+    public LocalDateTime getDateTime()
+    {
+        return LocalDateTime.of(getYear(), getMonth(), getDay(),
+                                getHour(), getMinute());
+    }
+    
+    /**
+     * Pack a date and time into a single value.
+     * @param year The year
+     * @param month The month (1-12)
+     * @param day The day (1-31)
+     * @param hour The hour (0-23)
+     * @param minute The minute (0-59)
+     * @return The packed time.
+     */
+    public static long packTime(int year, int month, int day, int hour, int minute)
+    {
+        return timeOf(pack(year, month, day, hour, minute, 0));
+    }
+    
+    /**
+     * Pack all of the fields of a log line into a single record.
+     * @param year The year
+     * @param month The month (1-12)
+     * @param day The day (1-31)
+     * @param hour The hour (0-23)
+     * @param minute The minute (0-59)
+     * @param code The status code
+     * @return The packed record.
+     * @throws IllegalArgumentException If a value is out of range
+     *         (see isValid).
+     */
+    public static long pack(int year, int month, int day, int hour, int minute, int code)
+    {
+        if(!isValid(year, month, day, hour, minute, code)) {
+            throw new IllegalArgumentException("Log values out of range: " + year +
+                " " + month + " " + day + " " + hour + " " + minute + " " + code);
+        }
+        return ((long) year << YEAR_SHIFT) | ((long) month << MONTH_SHIFT) |
+               ((long) day << DAY_SHIFT) | ((long) hour << HOUR_SHIFT) |
+               ((long) minute << MINUTE_SHIFT) | ((long) code << CODE_SHIFT);
+    }
+    
+    /**
+     * Are the fields of a log line in range? The year must be from
+     * 0 to MAX_YEAR, and the code from 0 to 65535. The day is only
+     * checked against 31, whatever the month.
+     * @param year The year
+     * @param month The month (1-12)
+     * @param day The day (1-31)
+     * @param hour The hour (0-23)
+     * @param minute The minute (0-59)
+     * @param code The status code
+     * @return true if every value is in range.
+     */
+    public static boolean isValid(int year, int month, int day, int hour, int minute, int code)
+    {
+        return year >= 0 && year <= MAX_YEAR && month >= 1 && month <= 12 &&
+               day >= 1 && day <= 31 && hour >= 0 && hour <= 23 &&
+               minute >= 0 && minute <= 59 && code >= 0 && code <= MAX_CODE;
+    }
+    
+    /**
+     * Is a packed record in range? Records read from a binary
+     * log are not made by pack, so they need checking.
+     * @param record A packed record.
+     * @return true if every field of the record is in range.
+     */
+    public static boolean isValid(long record)
+    {
+        return isValid(yearOf(record), monthOf(record), dayOf(record),
+                       hourOf(record), minuteOf(record), codeOf(record));
+    }
+    
+    /**
+     * Pack the values of a tokenized log line into a single record.
+     * @param dataValues The year, month, day, hour, minute and code.
+     * @return The packed record.
+     */
+    public static long pack(int[] dataValues)
+    {
+        return pack(dataValues[YEAR], dataValues[MONTH], dataValues[DAY],
+                    dataValues[HOUR], dataValues[MINUTE], dataValues[CODE]);
+    }
+    
+    /**
+     * @param record A packed record.
+     * @return The year field of the record.
+     */
+    public static int yearOf(long record)
+    {
+        return (int) (record >>> YEAR_SHIFT);
+    }
+    
+    /**
+     * @param record A packed record.
+     * @return The month field of the record.
+     */
+    public static int monthOf(long record)
+    {
+        return (int) (record >>> MONTH_SHIFT) & MAX_MONTH;
+    }
+    
+    /**
+     * @param record A packed record.
+     * @return The day field of the record.
+     */
+    public static int dayOf(long record)
+    {
+        return (int) (record >>> DAY_SHIFT) & MAX_DAY;
+    }
+    
+    /**
+     * @param record A packed record.
+     * @return The hour field of the record.
+     */
+    public static int hourOf(long record)
+    {
+        return (int) (record >>> HOUR_SHIFT) & MAX_HOUR;
+    }
+    
     /**
-     * Create an equivalent Calendar object from the data values.
+     * @param record A packed record.
+     * @return The minute field of the record.
      */
-    private void setWhen()
+    public static int minuteOf(long record)
     {
-        when = Calendar.getInstance();
-        // Adjust from 1-based month and day to 0-based.
-        when.set(dataValues[YEAR],
-                 dataValues[MONTH] - 1, dataValues[DAY] - 1,
-                 dataValues[HOUR], dataValues[MINUTE]);
+        return (int) (record >>> MINUTE_SHIFT) & MAX_MINUTE;
     }
     
-}
\ No newline at end of file
+    /**
+     * @param record A packed record.
+     * @return The code field of the record.
+     */
+    public static int codeOf(long record)
+    {
+        return (int) (record >>> CODE_SHIFT) & MAX_CODE;
+    }
+    
+    /**
+     * @param record A packed record.
+     * @return The date and time of the record as a packed time.
+     */
+    public static long timeOf(long record)
+    {
+        return record >>> TIME_SHIFT;
+    }
+    
+    /**
+     * @param time A packed time (see packTime).
+     * @return A record for the time, with a code of 0, so that
+     *         the fields of the time can be read with yearOf etc.
+     */
+    public static long recordAt(long time)
+    {
+        return time << TIME_SHIFT;
+    }
+    
+    /**
+     * @param record A packed record.
+     * @return The date of the record, without the time or code,
+     *         as a number that differs for each date.
+     */
+    public static long dateOf(long record)
+    {
+        return record >>> DAY_SHIFT;
+    }
+}
@@ -0,0 +1,144 @@
+import java.io.File;
+
+/**
+ * What to do with lines of a log file that cannot be parsed.
+ * They can be skipped, or quarantined by copying them to a side
+ * file so they can be looked at later, and in either case reading
+ * can be made to fail once there are too many of them:
+ *
+ *    LogErrorPolicy.skip()                     skip every bad line
+ *    LogErrorPolicy.quarantine()               copy them to log.rejected
+ *    LogErrorPolicy.failAfter(100)             skip 100, fail on the next
+ *    LogErrorPolicy.quarantine().withLimit(0)  copy the first and fail
+ *
+ * A policy holds no state, so one can be used for any number of
+ * files. What happens while a file is read is kept by a LogParseState.
+ *
+ * @author Steve Cate
+ * @version    10/17/26
+ */
+public class LogErrorPolicy
+{
+    // What is added to the name of a log to name its quarantine file.
+    public static final String QUARANTINE_SUFFIX = ".rejected";
+
+    // Whether bad lines are copied to a side file.
+    private final boolean quarantine;
+    // The side file, or null to name it after each log.
+    private final File quarantineFile;
+    // How many bad lines are put up with before reading fails.
+    private final int maxErrors;
+
+    /**
+     * Create a policy.
+     * @param quarantine Whether bad lines are copied to a side file.
+     * @param quarantineFile The side file, or null to name it after each log.
+     * @param maxErrors How many bad lines to put up with.
+     */
+    private LogErrorPolicy(boolean quarantine, File quarantineFile, int maxErrors)
+    {
+        if(maxErrors < 0) {
+            throw new IllegalArgumentException("The error limit cannot be negative: " + maxErrors);
+        }
+        this.quarantine = quarantine;
+        this.quarantineFile = quarantineFile;
+        this.maxErrors = maxErrors;
+    }
+
+    /**
+     * @return A policy that skips every line that cannot be parsed.
+     */
+    public static LogErrorPolicy skip()
+    {
+        return new LogErrorPolicy(false, null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return A policy that copies every line that cannot be parsed
+     *         to a side file named after the log, such as
+     *         weblog.txt.rejected for weblog.txt.
+     */
+    public static LogErrorPolicy quarantine()
+    {
+        return new LogErrorPolicy(true, null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param file The side file.
+     * @return A policy that copies every line that cannot be
+     *         parsed to a particular side file.
+     */
+    public static LogErrorPolicy quarantine(File file)
+    {
+        return new LogErrorPolicy(true, file, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param maxErrors How many bad lines to skip.
+     * @return A policy that skips lines that cannot be parsed,
+     *         until there are more than maxErrors of them.
+     */
+    public static LogErrorPolicy failAfter(int maxErrors)
+    {
+        return new LogErrorPolicy(false, null, maxErrors);
+    }
+
+    /**
+     * @return A policy that fails on the first line that cannot be parsed.
+     */
+    public static LogErrorPolicy strict()
+    {
+        return failAfter(0);
+    }
+
+    /**
+     * @param maxErrors How many bad lines to put up with.
+     * @return A policy like this one that fails once there
+     *         are more than maxErrors bad lines.
+     */
+    public LogErrorPolicy withLimit(int maxErrors)
+    {
+        return new LogErrorPolicy(quarantine, quarantineFile, maxErrors);
+    }
+
+    /**
+     * @return true if bad lines are copied to a side file.
+     */
+    public boolean isQuarantining()
+    {
+        return quarantine;
+    }
+
+    /**
+     * @param logFile A log file, or null if the lines do not come from a file.
+     * @return Where the bad lines of the log are copied,
+     *         or null if they are not copied.
+     */
+    public File getQuarantineFile(File logFile)
+    {
+        if(!quarantine) {
+            return null;
+        }
+        if(quarantineFile != null) {
+            return quarantineFile;
+        }
+        return logFile != null ? new File(logFile.getPath() + QUARANTINE_SUFFIX) : null;
+    }
+
+    /**
+     * @return How many bad lines are put up with before reading fails.
+     */
+    public int getMaxErrors()
+    {
+        return maxErrors;
+    }
+
+    /**
+     * @return A description of the policy.
+     */
+    public String toString()
+    {
+        String action = quarantine ? "quarantine" : "skip";
+        return maxErrors == Integer.MAX_VALUE ? action : action + " up to " + maxErrors;
+    }
+}
@@ -0,0 +1,284 @@
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters for the work done reading and analyzing logs: lines and
+ * bytes read, lines that could not be parsed, and the time spent
+ * loading, sorting and aggregating. They can be watched through JMX,
+ * as the MBean "weblog:type=LogMetrics", or by adding a listener.
+ *
+ * Metrics are off to begin with, and while they are off the only
+ * cost is a check of a flag once for each file or pass. They are
+ * turned on by enable(), or by starting Java with -Dweblog.metrics=true.
+ * Even then nothing is done for each line read, other than for a
+ * line that cannot be parsed: the lines are counted once a whole
+ * file or pass is done.
+ *
+ * @author Steve Cate
+ * @version    10/17/26
+ */
+public class LogMetrics implements LogMetricsMBean
+{
+    /**
+     * The stages of work that are timed.
+     */
+    public enum Stage
+    {
+        LOAD, SORT, AGGREGATE
+    }
+
+    // The name the metrics are registered under with JMX.
+    public static final String OBJECT_NAME = "weblog:type=LogMetrics";
+    // The one set of counters.
+    private static final LogMetrics METRICS = new LogMetrics();
+    // Whether anything is being counted.
+    private static volatile boolean enabled;
+    // Who is told of each measurement.
+    private static final List<LogMetricsListener> listeners = new CopyOnWriteArrayList<>();
+
+    // The counters. Adders suit many threads counting at once.
+    private final LongAdder linesRead = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder parseFailures = new LongAdder();
+    // The time spent in each stage, in nanoseconds.
+    private final LongAdder[] stageNanos;
+
+    static {
+        if(Boolean.getBoolean("weblog.metrics")) {
+            enable();
+        }
+    }
+
+    /**
+     * Create a set of counters, all zero.
+     */
+    private LogMetrics()
+    {
+        stageNanos = new LongAdder[Stage.values().length];
+        for(int i = 0; i < stageNanos.length; i++) {
+            stageNanos[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @return The one set of counters.
+     */
+    public static LogMetrics getMetrics()
+    {
+        return METRICS;
+    }
+
+    /**
+     * Start counting, and register the counters with JMX.
+     * If they cannot be registered they are still counted.
+     */
+    public static synchronized void enable()
+    {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            // An earlier copy of this class, such as one BlueJ has
+            // since recompiled, may still be registered.
+            if(server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(METRICS, name);
+        }
+        catch(JMException e) {
+            System.out.println("Problem encountered: " + e);
+        }
+        enabled = true;
+    }
+
+    /**
+     * Stop counting, and remove the counters from JMX.
+     * The counts so far are kept.
+     */
+    public static synchronized void disable()
+    {
+        enabled = false;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if(server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        }
+        catch(JMException e) {
+            System.out.println("Problem encountered: " + e);
+        }
+    }
+
+    /**
+     * @return true if the metrics are being counted.
+     */
+    public static boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Tell a listener of each measurement made while metrics are enabled.
+     * @param listener The listener.
+     */
+    public static void addListener(LogMetricsListener listener)
+    {
+        listeners.add(listener);
+    }
+
+    /**
+     * Stop telling a listener of measurements.
+     * @param listener The listener.
+     */
+    public static void removeListener(LogMetricsListener listener)
+    {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Count some lines that have been read.
+     * @param lines How many lines were read.
+     * @param bytes How many bytes they took up in the file.
+     */
+    public static void linesRead(long lines, long bytes)
+    {
+        if(!enabled) {
+            return;
+        }
+        METRICS.linesRead.add(lines);
+        METRICS.bytesRead.add(bytes);
+        for(LogMetricsListener listener : listeners) {
+            listener.linesRead(lines, bytes);
+        }
+    }
+
+    /**
+     * Count a line that could not be parsed.
+     * @param logline The line.
+     */
+    public static void parseFailed(CharSequence logline)
+    {
+        if(!enabled) {
+            return;
+        }
+        METRICS.parseFailures.increment();
+        for(LogMetricsListener listener : listeners) {
+            listener.parseFailed(logline);
+        }
+    }
+
+    /**
+     * Start timing a stage.
+     * @return The time to pass to stopTimer, or 0 if metrics are disabled.
+     */
+    public static long startTimer()
+    {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Finish timing a stage.
+     * @param stage The stage.
+     * @param start The time given by startTimer when the stage began.
+     */
+    public static void stopTimer(Stage stage, long start)
+    {
+        if(!enabled || start == 0) {
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        METRICS.stageNanos[stage.ordinal()].add(nanos);
+        for(LogMetricsListener listener : listeners) {
+            listener.stageTimed(stage, nanos);
+        }
+    }
+
+    /**
+     * @return The number of lines read.
+     */
+    public long getLinesRead()
+    {
+        return linesRead.sum();
+    }
+
+    /**
+     * @return The number of bytes read.
+     */
+    public long getBytesRead()
+    {
+        return bytesRead.sum();
+    }
+
+    /**
+     * @return The number of lines that could not be parsed.
+     */
+    public long getParseFailures()
+    {
+        return parseFailures.sum();
+    }
+
+    /**
+     * @param stage A stage.
+     * @return The total time spent in the stage, in nanoseconds.
+     */
+    public long getNanos(Stage stage)
+    {
+        return stageNanos[stage.ordinal()].sum();
+    }
+
+    /**
+     * @return The total time spent loading files, in milliseconds.
+     */
+    public long getLoadMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(getNanos(Stage.LOAD));
+    }
+
+    /**
+     * @return The total time spent sorting entries, in milliseconds.
+     */
+    public long getSortMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(getNanos(Stage.SORT));
+    }
+
+    /**
+     * @return The total time spent aggregating entries, in milliseconds.
+     */
+    public long getAggregateMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(getNanos(Stage.AGGREGATE));
+    }
+
+    /**
+     * Set all of the counters back to zero.
+     */
+    public void reset()
+    {
+        linesRead.reset();
+        bytesRead.reset();
+        parseFailures.reset();
+        for(LongAdder nanos : stageNanos) {
+            nanos.reset();
+        }
+    }
+
+    /**
+     * Print the counters.
+     */
+    public void printMetrics()
+    {
+        System.out.println("Lines read: " + getLinesRead());
+        System.out.println("Bytes read: " + getBytesRead());
+        System.out.println("Parse failures: " + getParseFailures());
+        for(Stage stage : Stage.values()) {
+            System.out.printf("%s time: %.1f ms%n", stage, getNanos(stage) / 1e6);
+        }
+    }
+}
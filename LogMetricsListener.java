@@ -0,0 +1,39 @@
+/**
+ * Something told about the work done reading and analyzing logs,
+ * while metrics are enabled (see LogMetrics). Each method is called
+ * once for a whole file or pass, not once for every line, except
+ * for parseFailed. A listener may be called from several threads
+ * at once, and should return quickly. Only the methods of interest
+ * need be written.
+ *
+ * @author Steve Cate
+ * @version    10/17/26
+ */
+public interface LogMetricsListener
+{
+    /**
+     * Some lines have been read.
+     * @param lines How many lines were read.
+     * @param bytes How many bytes they took up in the file.
+     */
+    default void linesRead(long lines, long bytes)
+    {
+    }
+
+    /**
+     * A line could not be parsed.
+     * @param logline The line.
+     */
+    default void parseFailed(CharSequence logline)
+    {
+    }
+
+    /**
+     * A stage of the work has finished.
+     * @param stage The stage.
+     * @param nanos How long it took, in nanoseconds.
+     */
+    default void stageTimed(LogMetrics.Stage stage, long nanos)
+    {
+    }
+}
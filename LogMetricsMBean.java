@@ -0,0 +1,44 @@
+/**
+ * The management interface of LogMetrics, as seen through JMX,
+ * for example in JConsole under "weblog".
+ *
+ * @author Steve Cate
+ * @version    10/17/26
+ */
+public interface LogMetricsMBean
+{
+    /**
+     * @return The number of lines read.
+     */
+    long getLinesRead();
+
+    /**
+     * @return The number of bytes read.
+     */
+    long getBytesRead();
+
+    /**
+     * @return The number of lines that could not be parsed.
+     */
+    long getParseFailures();
+
+    /**
+     * @return The total time spent loading files, in milliseconds.
+     */
+    long getLoadMillis();
+
+    /**
+     * @return The total time spent sorting entries, in milliseconds.
+     */
+    long getSortMillis();
+
+    /**
+     * @return The total time spent aggregating entries, in milliseconds.
+     */
+    long getAggregateMillis();
+
+    /**
+     * Set all of the counters back to zero.
+     */
+    void reset();
+}
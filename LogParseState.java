@@ -0,0 +1,251 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * What is learnt while one log file is parsed: how many columns
+ * its lines have, and which lines could not be parsed. Logs come
+ * with five columns (year month day hour minute), as in weblog.txt,
+ * or six, with a status code at the end. The number is taken from
+ * the first good line of the file and then used for every line, so
+ * a file of each kind is read without checking every line twice.
+ * Lines with a different number of columns are rejected. When
+ * parts of a file are parsed on several threads, the number is
+ * settled from the start of the file first (see detectFieldCount()),
+ * so that it never depends on which thread gets going first.
+ *
+ * Lines that cannot be parsed are dealt with as the file's
+ * LogErrorPolicy says. A state can be shared by the tokenizers of
+ * several threads reading parts of the same file. The file that bad
+ * lines are copied to is kept open from the first bad line until
+ * close() is called, which should be done when the load finishes.
+ *
+ * @author Steve Cate
+ * @version    10/17/26
+ */
+public class LogParseState
+{
+    // The number of columns before the status code.
+    public static final int DATE_FIELDS = 5;
+    // The number of columns when there is a status code.
+    public static final int CODED_FIELDS = 6;
+    // The number of columns before it is known.
+    public static final int UNKNOWN_FIELDS = Integer.MAX_VALUE;
+    // How many bad lines are printed before the rest are just counted.
+    private static final int PRINT_LIMIT = 10;
+
+    // The file being parsed, or null.
+    private final File file;
+    // What to do with bad lines.
+    private final LogErrorPolicy policy;
+    // The number of columns in the file.
+    private volatile int fieldCount;
+    // How many lines could not be parsed.
+    private int errorCount;
+    // Where bad lines are copied, if anywhere.
+    private final File quarantineFile;
+    // The open quarantine file, or null until a line is copied.
+    private Writer quarantine;
+
+    /**
+     * Start parsing a file.
+     * @param file The file, or null if the lines do not come from one.
+     * @param policy What to do with lines that cannot be parsed.
+     */
+    public LogParseState(File file, LogErrorPolicy policy)
+    {
+        this.file = file;
+        this.policy = policy;
+        fieldCount = UNKNOWN_FIELDS;
+        errorCount = 0;
+        quarantineFile = policy.getQuarantineFile(file);
+        quarantine = null;
+    }
+
+    /**
+     * @return The number of columns in the file, or UNKNOWN_FIELDS
+     *         if no good line has been seen yet.
+     */
+    public int getFieldCount()
+    {
+        return fieldCount;
+    }
+
+    /**
+     * Settle the number of columns in the file from a line, unless
+     * it is already settled.
+     * @param fields The number of values read from the line.
+     * @return The number of columns in the file, which is still
+     *         UNKNOWN_FIELDS if the line has too few values.
+     */
+    public synchronized int detectFieldCount(int fields)
+    {
+        if(fieldCount == UNKNOWN_FIELDS && fields >= DATE_FIELDS) {
+            fieldCount = Math.min(fields, CODED_FIELDS);
+        }
+        return fieldCount;
+    }
+
+    /**
+     * Settle the number of columns from the first good line of the
+     * file, reading from the start of the file until there is one.
+     * This is done before the file is split up to be parsed on
+     * several threads. Nothing is done if the number is already
+     * settled or the lines do not come from a file.
+     * @throws IOException If the file cannot be read.
+     */
+    public void detectFieldCount() throws IOException
+    {
+        if(file == null || fieldCount != UNKNOWN_FIELDS) {
+            return;
+        }
+        boolean compressed = GzipLogLoader.isGzip(file);
+        LoglineTokenizer tokenizer = new LoglineTokenizer();
+        try (InputStream bytes = new FileInputStream(file);
+             BufferedReader input = new BufferedReader(new InputStreamReader(
+                 compressed ? new GZIPInputStream(bytes) : bytes, StandardCharsets.ISO_8859_1))) {
+            String logline;
+            while((logline = input.readLine()) != null) {
+                int fields = tokenizer.countFields(logline);
+                if(fields != 0) {
+                    detectFieldCount(fields);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Deal with a line that could not be parsed, because it does
+     * not hold enough values or not as many as the file's lines.
+     * @param logline The line.
+     * @throws NoSuchElementException If there are now more bad
+     *         lines than the policy puts up with.
+     * @throws UncheckedIOException If the line cannot be quarantined.
+     */
+    public void reject(String logline)
+    {
+        reject("Insufficient data items on log line", logline);
+    }
+
+    /**
+     * Deal with a line whose values are out of range
+     * (see LogEntry.isValid).
+     * @param logline The line.
+     * @throws NoSuchElementException If there are now more bad
+     *         lines than the policy puts up with.
+     * @throws UncheckedIOException If the line cannot be quarantined.
+     */
+    public void rejectOutOfRange(String logline)
+    {
+        reject("Values out of range on log line", logline);
+    }
+
+    /**
+     * Deal with a record of a binary log whose values are out of
+     * range (see LogEntry.isValid). The record is quarantined as
+     * its offset and value in hexadecimal.
+     * @param offset Where the record starts in the file.
+     * @param record The record.
+     * @throws NoSuchElementException If there are now more bad
+     *         records than the policy puts up with.
+     * @throws UncheckedIOException If the record cannot be quarantined.
+     */
+    public void rejectRecord(long offset, long record)
+    {
+        reject("Bad record in binary log", String.format("byte %d: %016x", offset, record));
+    }
+
+    /**
+     * Count, report and quarantine a line or record that
+     * could not be used.
+     * @param problem What was wrong with it.
+     * @param logline The line, or a description of the record.
+     */
+    private synchronized void reject(String problem, String logline)
+    {
+        errorCount++;
+        LogMetrics.parseFailed(logline);
+        if(errorCount <= PRINT_LIMIT) {
+            System.out.println(problem + ": " + logline);
+        }
+        if(quarantineFile != null) {
+            try {
+                if(quarantine == null) {
+                    // The first bad line replaces what an earlier read left.
+                    quarantine = new OutputStreamWriter(
+                        new FileOutputStream(quarantineFile, errorCount > 1),
+                        StandardCharsets.ISO_8859_1);
+                }
+                quarantine.write(logline);
+                quarantine.write('\n');
+            }
+            catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        if(errorCount > policy.getMaxErrors()) {
+            throw new NoSuchElementException("Too many lines that could not be parsed" +
+                (file != null ? " in " + file : "") + ": " + errorCount);
+        }
+    }
+
+    /**
+     * Close the quarantine file, if it is open, so that every bad
+     * line so far is in it. If more lines are rejected after this,
+     * the file is opened again and they are added to the end.
+     * @throws UncheckedIOException If the file cannot be written.
+     */
+    public synchronized void close()
+    {
+        if(quarantine == null) {
+            return;
+        }
+        try {
+            quarantine.close();
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        finally {
+            quarantine = null;
+        }
+    }
+
+    /**
+     * @return How many lines could not be parsed.
+     */
+    public synchronized int getErrorCount()
+    {
+        return errorCount;
+    }
+
+    /**
+     * Print how many lines could not be parsed, if any.
+     */
+    public synchronized void printSummary()
+    {
+        if(errorCount == 0) {
+            return;
+        }
+        String name = (file != null) ? file.getName() : "the log";
+        if(quarantineFile != null) {
+            System.out.println(errorCount + " lines of " + name +
+                               " could not be parsed and were copied to " + quarantineFile);
+        }
+        else {
+            System.out.println(errorCount + " lines of " + name +
+                               " could not be parsed and were skipped");
+        }
+    }
+}
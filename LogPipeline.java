@@ -0,0 +1,545 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Read a log file as three stages that run at the same time:
+ * a reader that cuts the file into batches of whole lines, several
+ * parsers that turn batches into packed records, and an aggregator
+ * that gives the records to an accumulator in file order. The stages
+ * are joined by bounded queues, so a stage that gets ahead waits for
+ * the next one rather than filling memory, and the reader keeps the
+ * disk busy while the parsers work. The batches that have been read
+ * but not yet aggregated are limited too, so that if one parser is
+ * slow, the batches after its own cannot pile up waiting for it.
+ *
+ * The batch size, the number of parsers and the length of the queues
+ * can all be set. How deep each queue got and how fast each stage
+ * went are kept, and can be printed with printStats().
+ *
+ * Gzip-compressed logs are decompressed by the reader stage.
+ *
+ * @author Steve Cate
+ * @version    10/17/26
+ */
+public class LogPipeline
+{
+    // The default size of each batch of lines.
+    public static final int DEFAULT_BATCH_BYTES = 1 << 20;
+    // The default length of each queue.
+    public static final int DEFAULT_QUEUE_LENGTH = 8;
+    // How long the aggregator waits before checking for a failed stage.
+    private static final long POLL_MILLIS = 100;
+
+    // How many bytes of lines the reader puts in each batch.
+    private int batchBytes;
+    // How many parser threads there are.
+    private int parsers;
+    // How many batches each queue can hold.
+    private int queueLength;
+
+    // The problem that stopped a stage, if any.
+    private volatile Throwable failure;
+    // A permit for each batch that may be read but not yet aggregated.
+    private Semaphore inFlight;
+    // What each stage has done in the last run.
+    private AtomicLong bytesRead;
+    private AtomicLong readNanos;
+    private AtomicLong linesParsed;
+    private AtomicLong parseNanos;
+    private long recordsAggregated;
+    private long aggregateNanos;
+    private long totalNanos;
+    // The greatest number of batches waiting in each queue.
+    private AtomicInteger maxReadQueueDepth;
+    private AtomicInteger maxParsedQueueDepth;
+    // The queues of the run in progress, if any.
+    private volatile BlockingQueue<Batch> readQueue;
+    private volatile BlockingQueue<Batch> parsedQueue;
+
+    /**
+     * Create a pipeline with one parser for each processor,
+     * and the default batch size and queue length.
+     */
+    public LogPipeline()
+    {
+        this(DEFAULT_BATCH_BYTES, Runtime.getRuntime().availableProcessors(),
+             DEFAULT_QUEUE_LENGTH);
+    }
+
+    /**
+     * Create a pipeline.
+     * @param batchBytes How many bytes of lines to put in each batch.
+     *                   Longer lines are given batches of their own.
+     * @param parsers How many parser threads to use.
+     * @param queueLength How many batches each queue can hold.
+     */
+    public LogPipeline(int batchBytes, int parsers, int queueLength)
+    {
+        if(batchBytes <= 0 || parsers <= 0 || queueLength <= 0) {
+            throw new IllegalArgumentException("Pipeline sizes must be positive: " +
+                batchBytes + " " + parsers + " " + queueLength);
+        }
+        this.batchBytes = batchBytes;
+        this.parsers = parsers;
+        this.queueLength = queueLength;
+        resetStats();
+    }
+
+    /**
+     * Read every line of a log file into a store. The records are
+     * in the same order as the lines of the file; they are not sorted.
+     * Lines that cannot be parsed are skipped.
+     * @param file The log file.
+     * @return The records of the file.
+     * @throws IOException If the file cannot be read.
+     */
+    public LogStore load(File file) throws IOException
+    {
+        return load(file, new LogParseState(file, LogErrorPolicy.skip()));
+    }
+
+    /**
+     * Read every line of a log file into a store. The records are
+     * in the same order as the lines of the file; they are not sorted.
+     * @param file The log file.
+     * @param state What to do with lines that cannot be parsed.
+     * @return The records of the file.
+     * @throws IOException If the file cannot be read.
+     * @throws java.util.NoSuchElementException If there are too
+     *         many lines that cannot be parsed.
+     */
+    public LogStore load(File file, LogParseState state) throws IOException
+    {
+        LogStore store = new LogStore();
+        read(file, state, store::add);
+        return store;
+    }
+
+    /**
+     * Read every line of a log file, and give the entries to an
+     * accumulator in the order they are in the file. The accumulator
+     * is only ever called from the thread that calls this method.
+     * Lines that cannot be parsed are skipped.
+     * @param file The log file.
+     * @param accumulator Where to pass the entries.
+     * @throws IOException If the file cannot be read.
+     */
+    public void read(File file, LogAccumulator accumulator) throws IOException
+    {
+        read(file, new LogParseState(file, LogErrorPolicy.skip()), accumulator);
+    }
+
+    /**
+     * Read every line of a log file, and give the entries to an
+     * accumulator in the order they are in the file. The accumulator
+     * is only ever called from the thread that calls this method.
+     * @param file The log file.
+     * @param state What to do with lines that cannot be parsed.
+     *              It is shared by all of the parsers.
+     * @param accumulator Where to pass the entries.
+     * @throws IOException If the file cannot be read.
+     * @throws java.util.NoSuchElementException If there are too
+     *         many lines that cannot be parsed.
+     */
+    public void read(File file, LogParseState state, LogAccumulator accumulator)
+        throws IOException
+    {
+        state.detectFieldCount();
+        resetStats();
+        failure = null;
+        inFlight = new Semaphore(queueLength + parsers);
+        readQueue = new ArrayBlockingQueue<>(queueLength);
+        parsedQueue = new ArrayBlockingQueue<>(queueLength);
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(parsers + 1, task -> {
+            Thread thread = new Thread(task, "log pipeline");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            pool.execute(() -> runReader(file));
+            for(int i = 0; i < parsers; i++) {
+                pool.execute(() -> runParser(state));
+            }
+            aggregate(accumulator);
+        }
+        finally {
+            pool.shutdownNow();
+            try {
+                pool.awaitTermination(1, TimeUnit.SECONDS);
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            totalNanos = System.nanoTime() - start;
+            readQueue = null;
+            parsedQueue = null;
+        }
+    }
+
+    /**
+     * @return The number of batches waiting to be parsed right now.
+     */
+    public int getReadQueueDepth()
+    {
+        BlockingQueue<Batch> queue = readQueue;
+        return (queue == null) ? 0 : queue.size();
+    }
+
+    /**
+     * @return The number of batches waiting to be aggregated right now.
+     */
+    public int getParsedQueueDepth()
+    {
+        BlockingQueue<Batch> queue = parsedQueue;
+        return (queue == null) ? 0 : queue.size();
+    }
+
+    /**
+     * @return The most batches that waited to be parsed in the last run.
+     */
+    public int getMaxReadQueueDepth()
+    {
+        return maxReadQueueDepth.get();
+    }
+
+    /**
+     * @return The most batches that waited to be aggregated in the last run.
+     */
+    public int getMaxParsedQueueDepth()
+    {
+        return maxParsedQueueDepth.get();
+    }
+
+    /**
+     * @return How many bytes the reader stage read in the last run.
+     */
+    public long getBytesRead()
+    {
+        return bytesRead.get();
+    }
+
+    /**
+     * @return How many lines the parser stage parsed in the last run.
+     */
+    public long getLinesParsed()
+    {
+        return linesParsed.get();
+    }
+
+    /**
+     * Print how busy each stage was and how fast it went in the last run.
+     * A stage's rate is for the time it spent working, not waiting, so
+     * the slowest stage is the one whose rate is closest to the overall rate.
+     */
+    public void printStats()
+    {
+        double seconds = totalNanos / 1e9;
+        System.out.printf("Pipeline: %d bytes, %d lines in %.3f s (%.1f MB/s), " +
+                          "%d parsers, %d byte batches%n",
+                          bytesRead.get(), recordsAggregated, seconds,
+                          bytesRead.get() / 1e6 / seconds, parsers, batchBytes);
+        System.out.printf("  read:      %.1f MB/s busy, queue depth up to %d of %d%n",
+                          bytesRead.get() / 1e6 / (readNanos.get() / 1e9),
+                          maxReadQueueDepth.get(), queueLength);
+        System.out.printf("  parse:     %.0f lines/s per parser, queue depth up to %d of %d%n",
+                          linesParsed.get() / (parseNanos.get() / 1e9),
+                          maxParsedQueueDepth.get(), queueLength);
+        System.out.printf("  aggregate: %.0f lines/s busy%n",
+                          recordsAggregated / (aggregateNanos / 1e9));
+    }
+
+    /**
+     * The reader stage: cut the file into batches of whole lines.
+     * @param file The log file.
+     */
+    private void runReader(File file)
+    {
+        long sequence = 0;
+        try (InputStream input = open(file)) {
+            byte[] buffer = new byte[batchBytes];
+            int filled = 0;
+            while(true) {
+                long start = System.nanoTime();
+                int count = input.readNBytes(buffer, filled, buffer.length - filled);
+                filled += count;
+                bytesRead.addAndGet(count);
+                boolean finished = (filled < buffer.length);
+                int end = finished ? filled : lastNewline(buffer, filled) + 1;
+                if(!finished && end == 0) {
+                    // No line ends in the buffer, so make it bigger.
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                    readNanos.addAndGet(System.nanoTime() - start);
+                    continue;
+                }
+                // Keep the start of an unfinished line for the next batch.
+                byte[] next = null;
+                if(!finished) {
+                    next = new byte[Math.max(batchBytes, filled - end)];
+                    System.arraycopy(buffer, end, next, 0, filled - end);
+                }
+                readNanos.addAndGet(System.nanoTime() - start);
+                if(end > 0) {
+                    acquire();
+                    put(readQueue, new Batch(sequence++, buffer, end));
+                    maxReadQueueDepth.accumulateAndGet(readQueue.size(), Math::max);
+                }
+                if(finished) {
+                    break;
+                }
+                filled -= end;
+                buffer = next;
+            }
+            // Tell every parser that there is no more.
+            for(int i = 0; i < parsers; i++) {
+                put(readQueue, Batch.end(sequence));
+            }
+        }
+        catch(InterruptedException e) {
+            // The pipeline has been shut down.
+        }
+        catch(Throwable e) {
+            // Even an Error must reach the aggregator, or it waits forever.
+            fail(e);
+        }
+    }
+
+    /**
+     * A parser stage: turn batches of lines into records.
+     */
+    private void runParser(LogParseState state)
+    {
+        LoglineTokenizer tokenizer = new LoglineTokenizer(state);
+        try {
+            while(true) {
+                Batch batch = readQueue.take();
+                if(batch.isEnd()) {
+                    put(parsedQueue, batch);
+                    return;
+                }
+                long start = System.nanoTime();
+                Batch parsed = new Batch(batch.sequence, batch.length / 16);
+                tokenizer.tokenizeLines(batch.bytes, 0, batch.length, parsed::add);
+                linesParsed.addAndGet(parsed.length);
+                parseNanos.addAndGet(System.nanoTime() - start);
+                put(parsedQueue, parsed);
+                maxParsedQueueDepth.accumulateAndGet(parsedQueue.size(), Math::max);
+            }
+        }
+        catch(InterruptedException e) {
+            // The pipeline has been shut down.
+        }
+        catch(Throwable e) {
+            // Even an Error must reach the aggregator, or it waits forever.
+            fail(e);
+        }
+    }
+
+    /**
+     * The aggregator stage: pass the records on in file order.
+     * Batches that arrive before their turn wait until it comes.
+     * @param accumulator Where to pass the records.
+     */
+    private void aggregate(LogAccumulator accumulator) throws IOException
+    {
+        Map<Long, Batch> waiting = new HashMap<>();
+        long nextSequence = 0;
+        int finishedParsers = 0;
+        while(finishedParsers < parsers) {
+            Batch batch;
+            try {
+                batch = parsedQueue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while reading a log");
+            }
+            checkFailure();
+            if(batch == null) {
+                continue;
+            }
+            if(batch.isEnd()) {
+                finishedParsers++;
+            }
+            else {
+                waiting.put(batch.sequence, batch);
+            }
+            long start = System.nanoTime();
+            Batch next;
+            while((next = waiting.remove(nextSequence)) != null) {
+                for(int i = 0; i < next.length; i++) {
+                    accumulator.accumulate(next.records[i]);
+                }
+                recordsAggregated += next.length;
+                nextSequence++;
+                inFlight.release();
+            }
+            aggregateNanos += System.nanoTime() - start;
+        }
+        checkFailure();
+        if(!waiting.isEmpty()) {
+            throw new IOException("Log pipeline lost batch " + nextSequence);
+        }
+    }
+
+    /**
+     * Open a log file, decompressing it if it is compressed.
+     */
+    private static InputStream open(File file) throws IOException
+    {
+        if(GzipLogLoader.isGzip(file)) {
+            return new GZIPInputStream(new FileInputStream(file), 1 << 16);
+        }
+        return new FileInputStream(file);
+    }
+
+    /**
+     * @return The index of the last newline in the first length bytes, or -1.
+     */
+    private static int lastNewline(byte[] buffer, int length)
+    {
+        for(int i = length - 1; i >= 0; i--) {
+            if(buffer[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Put a batch on a queue, waiting for room, unless a stage fails.
+     */
+    private void put(BlockingQueue<Batch> queue, Batch batch) throws InterruptedException
+    {
+        while(!queue.offer(batch, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            if(failure != null) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    /**
+     * Wait until another batch may be read, unless a stage fails.
+     * The batches are aggregated in the order they are read, so the
+     * one the aggregator needs next always holds a permit.
+     */
+    private void acquire() throws InterruptedException
+    {
+        while(!inFlight.tryAcquire(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            if(failure != null) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    /**
+     * Record the first problem that stops a stage.
+     */
+    private synchronized void fail(Throwable e)
+    {
+        if(failure == null) {
+            failure = e;
+        }
+    }
+
+    /**
+     * Throw the problem that stopped a stage, if there was one.
+     */
+    private void checkFailure() throws IOException
+    {
+        Throwable e = failure;
+        if(e instanceof IOException) {
+            throw (IOException) e;
+        }
+        if(e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        }
+        if(e instanceof Error) {
+            throw (Error) e;
+        }
+        if(e != null) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Set all of the stage figures back to zero.
+     */
+    private void resetStats()
+    {
+        bytesRead = new AtomicLong();
+        readNanos = new AtomicLong();
+        linesParsed = new AtomicLong();
+        parseNanos = new AtomicLong();
+        recordsAggregated = 0;
+        aggregateNanos = 0;
+        totalNanos = 0;
+        maxReadQueueDepth = new AtomicInteger();
+        maxParsedQueueDepth = new AtomicInteger();
+    }
+
+    /**
+     * A batch of lines from the reader, or of records from a parser.
+     */
+    private static class Batch
+    {
+        // Where the batch comes in the file.
+        final long sequence;
+        // The lines, if the batch has not been parsed yet.
+        final byte[] bytes;
+        // The records, if the batch has been parsed.
+        long[] records;
+        // How many bytes or records are in use.
+        int length;
+
+        Batch(long sequence, byte[] bytes, int length)
+        {
+            this.sequence = sequence;
+            this.bytes = bytes;
+            this.length = length;
+        }
+
+        Batch(long sequence, int capacity)
+        {
+            this.sequence = sequence;
+            bytes = null;
+            records = new long[Math.max(16, capacity)];
+            length = 0;
+        }
+
+        /**
+         * @return A batch that marks the end of the file.
+         */
+        static Batch end(long sequence)
+        {
+            return new Batch(sequence, null, -1);
+        }
+
+        boolean isEnd()
+        {
+            return length < 0;
+        }
+
+        void add(long record)
+        {
+            if(length == records.length) {
+                records = Arrays.copyOf(records, length * 2);
+            }
+            records[length++] = record;
+        }
+    }
+}
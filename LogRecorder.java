@@ -0,0 +1,161 @@
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Collect log entries pushed in by many threads at once, such as
+ * the request threads of a web server, rather than read from a file.
+ * The counts are split into stripes, each with its own lock, and
+ * each thread records into the stripe its id picks, so threads
+ * seldom wait for one another. Reading the counts locks one
+ * stripe at a time and adds it in, so recording only waits while
+ * its own stripe is being copied. Every entry recorded before the
+ * snapshot starts is counted, and no entry is counted in some
+ * totals but not others, but the stripes are copied at slightly
+ * different moments: an entry recorded while the snapshot is being
+ * taken may be missed even though a later one is counted.
+ *
+ * Ask questions of the counts through getAnalyzer(), which gives
+ * a LogAnalyzer for a snapshot, so that recording can carry on
+ * while the questions are answered.
+ *
+ * @author Steve Cate
+ * @version    10/17/26
+ */
+public class LogRecorder implements LogAccumulator
+{
+    // The counts for each stripe, and the lock that guards each.
+    private final LogCounts[] stripes;
+    private final ReentrantLock[] locks;
+    // Picks a stripe from a hash of a thread id.
+    private final int stripeShift;
+
+    /**
+     * Create a recorder with enough stripes for the processors
+     * of this machine.
+     */
+    public LogRecorder()
+    {
+        this(4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a recorder with a particular number of stripes.
+     * @param minStripes The fewest stripes to use. It is rounded
+     *                   up to a power of two.
+     */
+    public LogRecorder(int minStripes)
+    {
+        if(minStripes <= 0) {
+            throw new IllegalArgumentException("There must be at least one stripe: " + minStripes);
+        }
+        int bits = 32 - Integer.numberOfLeadingZeros(minStripes - 1);
+        stripes = new LogCounts[1 << bits];
+        locks = new ReentrantLock[stripes.length];
+        for(int i = 0; i < stripes.length; i++) {
+            stripes[i] = new LogCounts();
+            locks[i] = new ReentrantLock();
+        }
+        stripeShift = 32 - bits;
+    }
+
+    /**
+     * Record an entry.
+     * @param entry The entry.
+     */
+    public void record(LogEntry entry)
+    {
+        accumulate(entry.getRecord());
+    }
+
+    /**
+     * Record an entry from its fields.
+     * @param year The year
+     * @param month The month (1-12)
+     * @param day The day (1-31)
+     * @param hour The hour (0-23)
+     * @param minute The minute (0-59)
+     * @param code The status code
+     * @throws IllegalArgumentException If a value is out of range
+     *         (see LogEntry.isValid).
+     */
+    public void record(int year, int month, int day, int hour, int minute, int code)
+    {
+        // pack checks the values.
+        accumulate(LogEntry.pack(year, month, day, hour, minute, code));
+    }
+
+    /**
+     * Record an entry given as a packed record. This lets a recorder
+     * be filled in by LogfileReader.scan, from any number of threads.
+     * @param record The packed record.
+     */
+    public void accumulate(long record)
+    {
+        int stripe = stripeFor(Thread.currentThread());
+        ReentrantLock lock = locks[stripe];
+        lock.lock();
+        try {
+            stripes[stripe].accumulate(record);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Take a copy of the counts so far, one stripe at a time.
+     * Each entry is either counted in all of the totals or in none.
+     * @return The counts of every entry recorded before the call,
+     *         and of some of those recorded during it.
+     */
+    public LogCounts snapshot()
+    {
+        LogCounts total = new LogCounts();
+        for(int i = 0; i < stripes.length; i++) {
+            locks[i].lock();
+            try {
+                total.add(stripes[i]);
+            }
+            finally {
+                locks[i].unlock();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Forget everything recorded so far, one stripe at a time.
+     */
+    public void reset()
+    {
+        for(int i = 0; i < stripes.length; i++) {
+            locks[i].lock();
+            try {
+                stripes[i].clear();
+            }
+            finally {
+                locks[i].unlock();
+            }
+        }
+    }
+
+    /**
+     * @return An analyzer for a snapshot of the counts so far.
+     */
+    public LogAnalyzer getAnalyzer()
+    {
+        return new LogAnalyzer(snapshot());
+    }
+
+    /**
+     * @param thread A thread.
+     * @return The stripe the thread records into.
+     */
+    private int stripeFor(Thread thread)
+    {
+        if(stripeShift == 32) {
+            return 0;
+        }
+        // Spread the ids, which are usually small and close together.
+        return (int) (thread.getId() * 0x9E3779B9L) >>> stripeShift;
+    }
+}
@@ -0,0 +1,354 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * The counts a LogAnalyzer works out for a log file, saved in a
+ * small file alongside the log (the log's name with ".rollup" added).
+ * The rollup also records how much of the log it covers and a
+ * checksum of each CHECKSUM_BLOCK_BYTES block of that part, so that
+ * it can tell whether the log has since been changed anywhere, or
+ * has only had lines added to the end. When lines are added, only
+ * the blocks they fall in need new checksums (see checksumsTo).
+ *
+ * Reading every block each time the log is opened would cost a pass
+ * over the whole log, so the rollup also records the log's size,
+ * modification time and file system identity when it was saved. If
+ * those are the same when the log is opened, only the first and last
+ * blocks are checked; all of them are checked only if they differ.
+ *
+ * @author Steve Cate
+ * @version    10/17/26
+ */
+public class LogRollup
+{
+    // The first bytes of every rollup file: "WLOGROLL".
+    private static final long MAGIC = 0x574C4F47524F4C4CL;
+    // The version of the rollup format.
+    private static final int VERSION = 7;
+    // How much of the log each checksum covers.
+    public static final int CHECKSUM_BLOCK_BYTES = 1 << 20;
+
+    // How many bytes of the log the counts cover.
+    private long size;
+    // The checksum of each block of the part of the log covered.
+    // The last block may be shorter than the others.
+    private long[] checksums;
+    // The counts for that part of the log.
+    private LogCounts counts;
+    // When the log was last modified, and its file system identity,
+    // as they were when the rollup was saved. -1 and "" until then.
+    private long modified;
+    private String fileKey;
+
+    /**
+     * Create a rollup of the counts for part of a log.
+     * The counts are copied.
+     * @param size How many bytes of the log the counts cover.
+     * @param checksums The checksums of that part of the log,
+     *                  from checksums() or checksumsTo().
+     * @param counts The counts for that part of the log.
+     */
+    public LogRollup(long size, long[] checksums, LogCounts counts)
+    {
+        this.size = size;
+        this.checksums = checksums;
+        this.counts = new LogCounts();
+        this.counts.add(counts);
+        modified = -1;
+        fileKey = "";
+    }
+
+    /**
+     * @return How many bytes of the log the counts cover.
+     */
+    public long getSize()
+    {
+        return size;
+    }
+
+    /**
+     * Does the rollup cover the whole of a log, as it is now?
+     * @param log The log file.
+     * @return true if the log has not changed since the rollup was made.
+     * @throws IOException If the log cannot be read.
+     */
+    public boolean isCurrent(File log) throws IOException
+    {
+        if(log.length() != size) {
+            return false;
+        }
+        if(isUntouched(log)) {
+            return matchesEnds(log);
+        }
+        return matches(log);
+    }
+
+    /**
+     * Has a log kept the modification time and file system identity
+     * it had when the rollup was saved? If so, and it is the same
+     * size, it is very unlikely to have changed.
+     * @param log The log file.
+     * @return true if the log looks untouched since the rollup was saved.
+     * @throws IOException If the log cannot be read.
+     */
+    public boolean isUntouched(File log) throws IOException
+    {
+        BasicFileAttributes attributes = Files.readAttributes(log.toPath(), BasicFileAttributes.class);
+        return attributes.size() == size &&
+               attributes.lastModifiedTime().toMillis() == modified &&
+               keyOf(attributes).equals(fileKey);
+    }
+
+    /**
+     * Has a log only had lines added to it since the rollup was made?
+     * @param log The log file.
+     * @return true if the part of the log the rollup covers is unchanged
+     *         and there is more after it.
+     * @throws IOException If the log cannot be read.
+     */
+    public boolean isPrefixOf(File log) throws IOException
+    {
+        return log.length() > size && matches(log);
+    }
+
+    /**
+     * Copy the counts into a LogAnalyzer's counts, in place
+     * of whatever they held before.
+     * @param counts Where to copy the counts.
+     */
+    public void copyCounts(LogCounts counts)
+    {
+        counts.clear();
+        counts.add(this.counts);
+    }
+
+    /**
+     * Save the rollup alongside its log, along with the log's
+     * modification time and file system identity as they are now.
+     * The rollup is written to a temporary file first, so a reader
+     * never sees half of it.
+     * @param log The log file the rollup is for.
+     * @throws IOException If the rollup cannot be written.
+     */
+    public void write(File log) throws IOException
+    {
+        BasicFileAttributes attributes = Files.readAttributes(log.toPath(), BasicFileAttributes.class);
+        modified = attributes.lastModifiedTime().toMillis();
+        fileKey = keyOf(attributes);
+        File rollupFile = rollupFileFor(log);
+        File tempFile = new File(rollupFile.getPath() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(
+                 new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            output.writeLong(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(size);
+            output.writeLong(modified);
+            output.writeUTF(fileKey);
+            output.writeInt(checksums.length);
+            for(long checksum : checksums) {
+                output.writeLong(checksum);
+            }
+            counts.writeTo(output);
+        }
+        Files.move(tempFile.toPath(), rollupFile.toPath(),
+                   StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Read the rollup saved alongside a log.
+     * @param log The log file.
+     * @return The rollup, or null if there is no usable rollup.
+     */
+    public static LogRollup read(File log)
+    {
+        File rollupFile = rollupFileFor(log);
+        if(!rollupFile.isFile()) {
+            return null;
+        }
+        try (DataInputStream input = new DataInputStream(
+                 new BufferedInputStream(new FileInputStream(rollupFile)))) {
+            if(input.readLong() != MAGIC || input.readInt() != VERSION) {
+                return null;
+            }
+            long size = input.readLong();
+            long modified = input.readLong();
+            String fileKey = input.readUTF();
+            long[] checksums = new long[input.readInt()];
+            if(checksums.length != blockCount(size)) {
+                return null;
+            }
+            for(int i = 0; i < checksums.length; i++) {
+                checksums[i] = input.readLong();
+            }
+            LogRollup rollup = new LogRollup(size, checksums, LogCounts.readFrom(input));
+            rollup.modified = modified;
+            rollup.fileKey = fileKey;
+            return rollup;
+        }
+        catch(IOException e) {
+            System.out.println("Ignoring unreadable rollup " + rollupFile + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * @param log A log file.
+     * @return Where the rollup for the log is kept.
+     */
+    public static File rollupFileFor(File log)
+    {
+        return new File(log.getPath() + ".rollup");
+    }
+
+    /**
+     * Work out the checksums of the start of a log, one for
+     * each CHECKSUM_BLOCK_BYTES block. All of that part is read.
+     * @param log The log file.
+     * @param size How much of the log to cover.
+     * @return The checksums.
+     * @throws IOException If the log cannot be read.
+     */
+    public static long[] checksums(File log, long size) throws IOException
+    {
+        return checksums(log, size, new long[0]);
+    }
+
+    /**
+     * Work out the checksums of the start of a log that has had
+     * lines added since this rollup was made, reusing the checksums
+     * of the blocks that were already complete. Only the rest of the
+     * log is read, so this should only be used once isPrefixOf() has
+     * shown that the part the rollup covers is unchanged.
+     * @param log The log file.
+     * @param size How much of the log to cover. This must be at
+     *             least as much as the rollup covers.
+     * @return The checksums.
+     * @throws IOException If the log cannot be read.
+     */
+    public long[] checksumsTo(File log, long size) throws IOException
+    {
+        long fullBlocks = this.size / CHECKSUM_BLOCK_BYTES;
+        return checksums(log, size, Arrays.copyOf(checksums, (int) fullBlocks));
+    }
+
+    /**
+     * Is the part of a log the rollup covers the same as it was?
+     * Reading stops at the first block that has changed.
+     * @param log The log file.
+     * @return true if every block's checksum is the same.
+     * @throws IOException If the log cannot be read.
+     */
+    private boolean matches(File log) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(log.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(CHECKSUM_BLOCK_BYTES);
+            for(int block = 0; block < checksums.length; block++) {
+                if(checksum(channel, buffer, block, size) != checksums[block]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Are the first and last blocks of the part of a log the rollup
+     * covers the same as they were?
+     * @param log The log file.
+     * @return true if both blocks' checksums are the same.
+     * @throws IOException If the log cannot be read.
+     */
+    private boolean matchesEnds(File log) throws IOException
+    {
+        if(checksums.length == 0) {
+            return true;
+        }
+        try (FileChannel channel = FileChannel.open(log.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(CHECKSUM_BLOCK_BYTES);
+            int last = checksums.length - 1;
+            return checksum(channel, buffer, 0, size) == checksums[0] &&
+                   checksum(channel, buffer, last, size) == checksums[last];
+        }
+    }
+
+    /**
+     * @param attributes The attributes of a file.
+     * @return The file system's identity for the file as text,
+     *         or "" if it has none.
+     */
+    private static String keyOf(BasicFileAttributes attributes)
+    {
+        Object key = attributes.fileKey();
+        return (key == null) ? "" : key.toString();
+    }
+
+    /**
+     * Work out the checksums of the start of a log, after the
+     * blocks whose checksums are already known.
+     * @param log The log file.
+     * @param size How much of the log to cover.
+     * @param known The checksums of the first few blocks.
+     * @return The checksums of every block.
+     * @throws IOException If the log cannot be read.
+     */
+    private static long[] checksums(File log, long size, long[] known) throws IOException
+    {
+        long[] checksums = Arrays.copyOf(known, blockCount(size));
+        try (FileChannel channel = FileChannel.open(log.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(CHECKSUM_BLOCK_BYTES);
+            for(int block = known.length; block < checksums.length; block++) {
+                checksums[block] = checksum(channel, buffer, block, size);
+            }
+        }
+        return checksums;
+    }
+
+    /**
+     * Work out the checksum of one block of a log.
+     * @param channel The open log file.
+     * @param buffer Where to read the block, big enough for a whole one.
+     * @param block Which block.
+     * @param size How much of the log is covered; the last block ends here.
+     * @return The checksum.
+     * @throws IOException If the log cannot be read.
+     */
+    private static long checksum(FileChannel channel, ByteBuffer buffer, int block, long size)
+        throws IOException
+    {
+        long start = (long) block * CHECKSUM_BLOCK_BYTES;
+        buffer.clear();
+        buffer.limit((int) Math.min(CHECKSUM_BLOCK_BYTES, size - start));
+        while(buffer.hasRemaining()) {
+            if(channel.read(buffer, start + buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        CRC32 crc = new CRC32();
+        crc.update(buffer);
+        return crc.getValue();
+    }
+
+    /**
+     * @param size How much of a log is covered.
+     * @return How many checksum blocks that takes.
+     */
+    private static int blockCount(long size)
+    {
+        return (int) ((size + CHECKSUM_BLOCK_BYTES - 1) / CHECKSUM_BLOCK_BYTES);
+    }
+}
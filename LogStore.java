@@ -0,0 +1,350 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Hold the data of a log file as packed records (see LogEntry)
+ * rather than as separate objects. The records are kept in
+ * fixed-size chunks of primitive longs, so growing the store
+ * never copies the data that is already there, and each log
+ * line costs only eight bytes.
+ *
+ * @author Steve Cate
+ * @version    10/17/26
+ */
+public class LogStore implements Iterable<LogEntry>
+{
+    // How many records each chunk holds, as a power of two
+    // so that an index can be split with shifts and masks.
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    // Records made up of no more than this many runs that are each
+    // in order, such as several sorted logs joined together, are
+    // merged rather than sorted from scratch.
+    private static final int MAX_MERGED_RUNS = 64;
+    // How many records there must be for sorting on several
+    // threads to be worthwhile.
+    private static final int PARALLEL_SORT_SIZE = 1 << 16;
+
+    // The chunks of records. Only the first few may be in use.
+    private long[][] chunks;
+    // How many records are held.
+    private int size;
+
+    /**
+     * Create an empty store.
+     */
+    public LogStore()
+    {
+        chunks = new long[4][];
+        size = 0;
+    }
+
+    /**
+     * Add a record to the end of the store.
+     * @param record The packed record to add.
+     */
+    public void add(long record)
+    {
+        int chunk = size >>> CHUNK_BITS;
+        if(chunk == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunks.length * 2);
+        }
+        if(chunks[chunk] == null) {
+            chunks[chunk] = new long[CHUNK_SIZE];
+        }
+        chunks[chunk][size & CHUNK_MASK] = record;
+        size++;
+    }
+
+    /**
+     * Add an entry to the end of the store.
+     * @param entry The entry to add.
+     */
+    public void add(LogEntry entry)
+    {
+        add(entry.getRecord());
+    }
+
+    /**
+     * Parse lines of log text and add their records to the end
+     * of the store. The lines are taken to be from one log, so
+     * they must all have the same number of columns.
+     * The last line need not end with a newline.
+     * @param data The bytes of the log text.
+     * @param start The index of the first byte.
+     * @param end The index just past the last byte.
+     * @throws java.util.NoSuchElementException If a line does
+     *         not hold enough values.
+     */
+    public void addLines(byte[] data, int start, int end)
+    {
+        LogParseState state = new LogParseState(null, LogErrorPolicy.strict());
+        new LoglineTokenizer(state).tokenizeLines(data, start, end, this::add);
+    }
+
+    /**
+     * Add every record from another store to the end of this one.
+     * @param other The store to copy from.
+     */
+    public void addAll(LogStore other)
+    {
+        for(int i = 0; i < other.size; i++) {
+            add(other.get(i));
+        }
+    }
+
+    /**
+     * @return The number of records held.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Return a record.
+     * @param index The position of the record (0 to size()-1).
+     * @return The packed record.
+     */
+    public long get(int index)
+    {
+        if(index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+        }
+        return chunks[index >>> CHUNK_BITS][index & CHUNK_MASK];
+    }
+
+    /**
+     * Return a view of a record as a LogEntry.
+     * @param index The position of the record (0 to size()-1).
+     * @return An entry for the record.
+     */
+    public LogEntry getEntry(int index)
+    {
+        return new LogEntry(get(index));
+    }
+
+    /**
+     * Give every record, in order, to an accumulator.
+     * @param accumulator The accumulator to fill in.
+     */
+    public void scan(LogAccumulator accumulator)
+    {
+        int remaining = size;
+        for(int c = 0; remaining > 0; c++) {
+            long[] chunk = chunks[c];
+            int count = Math.min(remaining, CHUNK_SIZE);
+            for(int i = 0; i < count; i++) {
+                accumulator.accumulate(chunk[i]);
+            }
+            remaining -= count;
+        }
+    }
+
+    /**
+     * Find where a time comes in the records, by binary search.
+     * The records must be sorted.
+     * @param time A packed time (see LogEntry.packTime).
+     * @return The position of the first record at or after the time,
+     *         or size() if all of the records are before it.
+     */
+    public int indexOf(long time)
+    {
+        int low = 0;
+        int high = size;
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+            if(LogEntry.timeOf(get(middle)) < time) {
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return true if the records are in ascending order of date.
+     */
+    public boolean isSorted()
+    {
+        return countOutOfOrder() == 0;
+    }
+
+    /**
+     * Count the records that are earlier than the one before them.
+     * @return The number of out of order records.
+     */
+    public int countOutOfOrder()
+    {
+        return countOutOfOrder(0);
+    }
+
+    /**
+     * Count the records from a given position onwards that are
+     * earlier than the one before them.
+     * @param from The position of the first record to check.
+     * @return The number of out of order records.
+     */
+    public int countOutOfOrder(int from)
+    {
+        int count = 0;
+        for(int i = Math.max(1, from); i < size; i++) {
+            if(LogEntry.timeOf(get(i)) < LogEntry.timeOf(get(i - 1))) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Sort the records into ascending order of date.
+     * Records with the same date and time are ordered by code.
+     * If the records are a few runs that are each in order already,
+     * the runs are merged, which takes a single pass per doubling of
+     * run length. Otherwise large stores are sorted on several threads.
+     */
+    public void sort()
+    {
+        long[] records = toArray();
+        int[] runStarts = findRuns(records, MAX_MERGED_RUNS);
+        if(runStarts == null) {
+            if(size >= PARALLEL_SORT_SIZE) {
+                Arrays.parallelSort(records);
+            }
+            else {
+                Arrays.sort(records);
+            }
+        }
+        else if(runStarts.length > 1) {
+            records = mergeRuns(records, runStarts);
+        }
+        else {
+            // Already in order.
+            return;
+        }
+        for(int i = 0; i < size; i++) {
+            chunks[i >>> CHUNK_BITS][i & CHUNK_MASK] = records[i];
+        }
+    }
+
+    /**
+     * Find where each run of records that are in order starts.
+     * @param records The records.
+     * @param maxRuns The most runs to look for.
+     * @return The index of the start of each run, or null if
+     *         there are more than maxRuns runs.
+     */
+    private static int[] findRuns(long[] records, int maxRuns)
+    {
+        int[] runStarts = new int[maxRuns];
+        int runs = 1;
+        for(int i = 1; i < records.length; i++) {
+            if(records[i] < records[i - 1]) {
+                if(runs == maxRuns) {
+                    return null;
+                }
+                runStarts[runs++] = i;
+            }
+        }
+        return Arrays.copyOf(runStarts, runs);
+    }
+
+    /**
+     * Merge runs of records that are each in order, a pair of runs
+     * at a time, until there is only one run left.
+     * @param records The records.
+     * @param runStarts The index of the start of each run.
+     * @return The records in order. This may be a different array.
+     */
+    private static long[] mergeRuns(long[] records, int[] runStarts)
+    {
+        long[] from = records;
+        long[] to = new long[records.length];
+        // The boundaries of the runs, with the end of the records last.
+        int[] bounds = Arrays.copyOf(runStarts, runStarts.length + 1);
+        int runs = runStarts.length;
+        bounds[runs] = records.length;
+        while(runs > 1) {
+            int merged = 0;
+            for(int run = 0; run < runs; run += 2) {
+                int start = bounds[run];
+                int middle = bounds[Math.min(run + 1, runs)];
+                int end = bounds[Math.min(run + 2, runs)];
+                merge(from, start, middle, end, to);
+                bounds[merged++] = start;
+            }
+            bounds[merged] = records.length;
+            runs = merged;
+            long[] swap = from;
+            from = to;
+            to = swap;
+        }
+        return from;
+    }
+
+    /**
+     * Merge two neighbouring runs that are each in order.
+     * @param from The array holding the runs.
+     * @param start The start of the first run.
+     * @param middle The start of the second run.
+     * @param end The end of the second run.
+     * @param to Where to put the merged run, at the same place.
+     */
+    private static void merge(long[] from, int start, int middle, int end, long[] to)
+    {
+        int left = start;
+        int right = middle;
+        for(int i = start; i < end; i++) {
+            if(right >= end || (left < middle && from[left] <= from[right])) {
+                to[i] = from[left++];
+            }
+            else {
+                to[i] = from[right++];
+            }
+        }
+    }
+
+    /**
+     * @return A copy of all the records in a single array.
+     */
+    public long[] toArray()
+    {
+        long[] records = new long[size];
+        int remaining = size;
+        for(int c = 0; remaining > 0; c++) {
+            int count = Math.min(remaining, CHUNK_SIZE);
+            System.arraycopy(chunks[c], 0, records, c * CHUNK_SIZE, count);
+            remaining -= count;
+        }
+        return records;
+    }
+
+    /**
+     * Iterate over the records, viewing each one as a LogEntry.
+     * @return An iterator over the entries.
+     */
+    public Iterator<LogEntry> iterator()
+    {
+        return new Iterator<LogEntry>() {
+            // The position of the next record.
+            private int index = 0;
+
+            public boolean hasNext()
+            {
+                return index < size;
+            }
+
+            public LogEntry next()
+            {
+                if(index >= size) {
+                    throw new NoSuchElementException();
+                }
+                return getEntry(index++);
+            }
+        };
+    }
+}
@@ -56,6 +56,116 @@ public class LogfileCreator
         return success;
     }
     
+    /**
+     * Create a file of random log entries that are already in order,
+     * without holding them all in memory. This allows much larger
+     * files to be made than createFile can manage.
+     * The entries cover the same range of dates as createEntry.
+     * @param filename The file to write.
+     * @param numEntries How many entries.
+     * @return true if successful, false otherwise.
+     */
+    public boolean createSortedFile(String filename, long numEntries)
+    {
+        boolean success = false;
+        
+        if(numEntries > 0) {
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(filename), 1 << 16)) {
+                // The number of different minutes an entry can fall in.
+                int minutes = 5 * 12 * 28 * 24 * 60;
+                // Pick the entries' positions in that range as sorted
+                // random numbers, one after the other: each is the smallest
+                // of the numbers still to come, which has a known distribution.
+                double position = 0;
+                for(long remaining = numEntries; remaining > 0; remaining--) {
+                    position = 1 - (1 - position) * Math.pow(rand.nextDouble(), 1.0 / remaining);
+                    int minute = (int) Math.min(minutes - 1, (long) (position * minutes));
+                    writer.write(entryAtMinute(minute).toString());
+                    writer.write('\n');
+                }
+                success = true;
+            }
+            catch(IOException e) {
+                System.err.println("There was a problem writing to " + filename);
+            }
+        }
+        return success;
+    }
+    
+    /**
+     * Create an entry with a random code at one of the minutes covered
+     * by createEntry, counting from the first minute of 2015.
+     * @param minute Which minute (0 is the first).
+     * @return A log entry for that minute.
+     */
+    private LogEntry entryAtMinute(int minute)
+    {
+        int minuteOfHour = minute % 60;
+        minute /= 60;
+        int hour = minute % 24;
+        minute /= 24;
+        int day = 1 + minute % 28;
+        minute /= 28;
+        int month = 1 + minute % 12;
+        int year = 2015 + minute / 12;
+        return new LogEntry(year, month, day, hour, minuteOfHour, codes[rand.nextInt(100)]);
+    }
+    
+    /**
+     * Create a binary log file (see BinaryLogFormat) of random entries.
+     * @param filename The file to write.
+     * @param numEntries How many entries.
+     * @return true if successful, false otherwise.
+     */
+    public boolean createBinaryFile(String filename, int numEntries)
+    {
+        boolean success = false;
+        
+        if(numEntries > 0) {
+            try (BinaryLogFormat writer = new BinaryLogFormat(new File(filename))) {
+                LogEntry[] entries = new LogEntry[numEntries];
+                for(int i = 0; i < numEntries; i++) {
+                    entries[i] = createEntry();
+                }
+                Arrays.sort(entries);
+                for(int i = 0; i < numEntries; i++) {
+                    writer.write(entries[i]);
+                }
+                
+                success = true;
+            }
+            catch(IOException e) {
+                System.err.println("There was a problem writing to " + filename);
+            }
+        }
+        return success;
+    }
+    
+    /**
+     * Convert a text log file into a binary log file with the same
+     * entries in the same order.
+     * @param textFilename The text log to read.
+     * @param binaryFilename The binary log to write.
+     * @return true if successful, false otherwise.
+     */
+    public boolean convertToBinary(String textFilename, String binaryFilename)
+    {
+        boolean success = false;
+        
+        try (LogfileStream input = new LogfileStream(new File(textFilename));
+             BinaryLogFormat writer = new BinaryLogFormat(new File(binaryFilename))) {
+            while(input.hasNext()) {
+                writer.write(input.next());
+            }
+            success = true;
+        }
+        catch(IOException e) {
+            System.err.println("There was a problem converting " + textFilename +
+                               " to " + binaryFilename);
+        }
+        return success;
+    }
+    
     /**
      * Make a array to pick what code the entry gets randomly
      * there will be a 95% chane the code is 200 OK
@@ -0,0 +1,245 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Read a log file that is still being written, a little at a time.
+ * The follower remembers how far into the file it has read, so each
+ * call to readNew() only reads the bytes added since the last call.
+ * Only complete lines are read; a line that is still being written
+ * is left until its newline arrives. The records of a block of lines
+ * are only handed on once the whole block has been parsed, so if
+ * reading stops part way, the next call starts again where the last
+ * handed-on record ended and nothing is handed on twice.
+ *
+ * @author Steve Cate
+ * @version    10/17/26
+ */
+public class LogfileFollower
+{
+    // How many bytes to read from the file at a time.
+    private static final int BLOCK_BYTES = 1 << 20;
+    // How many of the last bytes read are kept, to tell
+    // whether the file has been replaced.
+    private static final int TAIL_BYTES = 256;
+
+    // The file being followed.
+    private File file;
+    // How far into the file has been read.
+    private long offset;
+    // Where the bytes are read into.
+    private byte[] buffer;
+    // What is known about the file, and what to do
+    // with lines that cannot be parsed.
+    private LogParseState state;
+    // The file system's identity for the file, if it has one.
+    private Object fileKey;
+    // The last bytes read, just before offset.
+    private byte[] tail;
+    // The records of the block being parsed.
+    private long[] pending;
+    private int pendingCount;
+
+    /**
+     * Create a follower that starts at the beginning of a file.
+     * @param file The log file to follow.
+     */
+    public LogfileFollower(File file)
+    {
+        this(file, 0);
+    }
+
+    /**
+     * Create a follower that starts part way through a file,
+     * such as where an earlier follower got to.
+     * @param file The log file to follow.
+     * @param offset Where to start reading. This must be
+     *               the start of a line.
+     */
+    public LogfileFollower(File file, long offset)
+    {
+        this(file, offset, new LogParseState(file, LogErrorPolicy.skip()));
+    }
+
+    /**
+     * Create a follower that starts part way through a file,
+     * and deals with lines that cannot be parsed in a particular way.
+     * @param file The log file to follow.
+     * @param offset Where to start reading. This must be
+     *               the start of a line.
+     * @param state What to do with lines that cannot be parsed,
+     *              from now on.
+     */
+    public LogfileFollower(File file, long offset, LogParseState state)
+    {
+        this.file = file;
+        this.offset = offset;
+        this.state = state;
+        buffer = new byte[BLOCK_BYTES];
+        pending = new long[1024];
+        fileKey = fileKeyOf(file);
+        tail = new byte[0];
+    }
+
+    /**
+     * @return How many bytes of the file have been read.
+     */
+    public long getOffset()
+    {
+        return offset;
+    }
+
+    /**
+     * Has the file become shorter than the part already read, or
+     * been replaced by another file? This happens when a log is
+     * truncated or rotated, and means that it must be read again
+     * from the start. A replacement is noticed by the file system's
+     * identity for the file changing, or by the last bytes read
+     * no longer being the same.
+     * @return true if the file has shrunk or been replaced.
+     * @throws IOException If the file cannot be read.
+     */
+    public boolean wasTruncated() throws IOException
+    {
+        if(file.length() < offset || !Objects.equals(fileKey, fileKeyOf(file))) {
+            return true;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return !tailMatches(channel);
+        }
+    }
+
+    /**
+     * Start again from the beginning of the file.
+     * @throws IOException If the file cannot be read.
+     */
+    public void restart() throws IOException
+    {
+        offset = 0;
+        tail = new byte[0];
+        fileKey = fileKeyOf(file);
+    }
+
+    /**
+     * Read the complete lines that have been added to the file
+     * since the last call, and add their records to a store.
+     * @param store Where to add the new records.
+     * @return The number of records added.
+     * @throws IOException If the file cannot be read, or
+     *         if it has shrunk since the last call.
+     */
+    public int readNew(LogStore store) throws IOException
+    {
+        return readNew(store::add);
+    }
+
+    /**
+     * Read the complete lines that have been added to the file
+     * since the last call, and give their records to an accumulator.
+     * @param accumulator Where to pass the new records.
+     * @return The number of records read.
+     * @throws IOException If the file cannot be read, or
+     *         if it has shrunk or been replaced since the last call.
+     */
+    public int readNew(LogAccumulator accumulator) throws IOException
+    {
+        LoglineTokenizer tokenizer = new LoglineTokenizer(state);
+        int added = 0;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if(size < offset) {
+                throw new IOException("Log file has been truncated: " + file);
+            }
+            if(!tailMatches(channel)) {
+                throw new IOException("Log file has been replaced: " + file);
+            }
+            while(offset < size) {
+                int length = (int) Math.min(buffer.length, size - offset);
+                ByteBuffer block = ByteBuffer.wrap(buffer, 0, length);
+                while(block.hasRemaining()) {
+                    if(channel.read(block, offset + block.position()) < 0) {
+                        throw new IOException("Log file has been truncated: " + file);
+                    }
+                }
+                // Only take up to the last newline in the block.
+                int end = length;
+                while(end > 0 && buffer[end - 1] != '\n') {
+                    end--;
+                }
+                if(end == 0) {
+                    if(length < buffer.length) {
+                        // The last line is still being written.
+                        break;
+                    }
+                    // A line longer than the buffer; make room for it.
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                    continue;
+                }
+                // Parse the whole block before handing anything on.
+                pendingCount = 0;
+                tokenizer.tokenizeLines(buffer, 0, end, this::hold);
+                for(int i = 0; i < pendingCount; i++) {
+                    accumulator.accumulate(pending[i]);
+                }
+                added += pendingCount;
+                offset += end;
+                tail = Arrays.copyOfRange(buffer, Math.max(0, end - TAIL_BYTES), end);
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Keep a record of the block being parsed.
+     * @param record The record.
+     */
+    private void hold(long record)
+    {
+        if(pendingCount == pending.length) {
+            pending = Arrays.copyOf(pending, pending.length * 2);
+        }
+        pending[pendingCount++] = record;
+    }
+
+    /**
+     * Are the bytes just before offset still the last ones read?
+     * @param channel The open file.
+     * @return true if they are, or if nothing has been read yet.
+     * @throws IOException If the file cannot be read.
+     */
+    private boolean tailMatches(FileChannel channel) throws IOException
+    {
+        if(tail.length == 0) {
+            return true;
+        }
+        ByteBuffer bytes = ByteBuffer.allocate(tail.length);
+        long position = offset - tail.length;
+        while(bytes.hasRemaining()) {
+            if(channel.read(bytes, position + bytes.position()) < 0) {
+                return false;
+            }
+        }
+        return Arrays.equals(bytes.array(), tail);
+    }
+
+    /**
+     * @param file A file.
+     * @return The file system's identity for the file, such as its
+     *         inode, or null if it has none or the file is missing.
+     */
+    private static Object fileKeyOf(File file)
+    {
+        try {
+            return Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+        }
+        catch(IOException e) {
+            return null;
+        }
+    }
+}
@@ -1,9 +1,9 @@
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URISyntaxException;
 import java.net.URL;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Iterator;
 import java.util.Random;
 import java.util.Scanner;
@@ -14,7 +14,12 @@ import java.util.Scanner;
  * date and time information in the format:
  *
  *    year month day hour minute
- * Log entries are sorted into ascending order of date.
+ * optionally followed by a status code on every line.
+ * Lines that cannot be parsed are dealt with as the
+ * reader's LogErrorPolicy says; by default they are skipped.
+ * Log entries are sorted into ascending order of date,
+ * unless the file is streamed, in which case it must
+ * already be in that order.
  * 
  * @author David J. Barnes and Michael Kölling.
  * @version    2016.02.29
@@ -23,11 +28,26 @@ public class LogfileReader implements Iterator<LogEntry>
 {
     // The data format in the log file.
     private String format;
-    // Where the file's contents are stored in the form
-    // of LogEntry objects.
-    private ArrayList<LogEntry> entries;
+    // How the data is supplied.
+    private ReadMode mode;
+    // The log file, or null if simulated data is being used.
+    private File file;
+    // Where the file's contents are stored as packed
+    // records. Null when the file is being streamed.
+    private LogStore store;
+    // The file being streamed, if it is not held in the store.
+    private LogfileStream stream;
+    // Keeps track of how much of the file has been read, in FOLLOW mode.
+    private LogfileFollower follower;
     // An iterator over entries.
     private Iterator<LogEntry> dataIterator;
+    // How many entries were out of order in the file.
+    private int outOfOrderCount;
+    // What to do with lines that cannot be parsed.
+    private LogErrorPolicy errorPolicy;
+    // What was found parsing the file; for a streamed
+    // file, in the latest pass through it.
+    private LogParseState parseState;
     
     /**
      * Create a LogfileReader to supply data from a default file.
@@ -40,46 +60,160 @@ public class LogfileReader implements Iterator<LogEntry>
     /**
      * Create a LogfileReader that will supply data
      * from a particular log file. 
-     * @param filename The file of log data.
+     * @param filename The name or path of the file of log data.
      */
     public LogfileReader(String filename)
+    {
+        this(filename, ReadMode.LOAD);
+    }
+    
+    /**
+     * Create a LogfileReader that will supply data from a
+     * particular log file in the given way.
+     * In STREAM mode the entries are never all held in memory, so the
+     * file must already be in ascending order of date. Any entries that
+     * are not are reported as they are read.
+     * In PARALLEL mode the file is parsed on several threads, giving
+     * exactly the same data as LOAD. MAPPED mode also gives the same
+     * data, reading it from the file mapped into memory, as does
+     * PIPELINE mode, reading and parsing it in overlapping stages. FOLLOW mode
+     * reads the data like LOAD and can then pick up lines that are
+     * added to the file later, through refresh().
+     * Binary logs written by LogfileCreator, and gzip-compressed logs,
+     * are recognised and read in any mode; other than STREAM, they
+     * are always simply loaded.
+     * @param filename The name or path of the file of log data.
+     * @param mode How the data should be supplied.
+     */
+    public LogfileReader(String filename, ReadMode mode)
+    {
+        this(filename, mode, LogErrorPolicy.skip());
+    }
+    
+    /**
+     * Create a LogfileReader that will supply data from a
+     * particular log file in the given way, dealing with lines
+     * that cannot be parsed as a policy says.
+     * @param filename The name or path of the file of log data.
+     * @param mode How the data should be supplied.
+     * @param errorPolicy What to do with lines that cannot be parsed.
+     * @throws java.util.NoSuchElementException If the policy says
+     *         to fail, and there are too many such lines.
+     */
+    public LogfileReader(String filename, ReadMode mode, LogErrorPolicy errorPolicy)
     {
         // The format for the data.
-        format = "Year Month(1-12) Day Hour Minute";       
-        // Where to store the data.
-        entries = new ArrayList<>();
+        format = "Year Month(1-12) Day Hour Minute [Code]";       
+        this.mode = mode;
+        this.errorPolicy = errorPolicy;
         
         // Attempt to read the complete set of data from file.
         boolean dataRead;
+        long startTime = LogMetrics.startTimer();
         try{
-            // Locate the file with respect to the current environment.
-            URL fileURL = getClass().getClassLoader().getResource(filename);
-            if(fileURL == null) {
-                throw new FileNotFoundException(filename);
-            }
-            Scanner logfile = new Scanner(new File(fileURL.toURI()));
-            // Read the data lines until the end of file.
-            while(logfile.hasNextLine()) {
-                String logline = logfile.nextLine();
-                // Break up the line and add it to the list of entries.
-                LogEntry entry = new LogEntry(logline);
-                entries.add(entry);
-            }
-            logfile.close();
+            file = locateFile(filename);
+            parseState = new LogParseState(file, errorPolicy);
+            if(mode == ReadMode.STREAM) {
+                // Make sure the file can be opened. The data itself
+                // is read as it is needed.
+                stream = new LogfileStream(file, 0, parseState);
+            }
+            else if(BinaryLogFormat.isBinary(file)) {
+                // Binary logs need no parsing, so they are
+                // always simply loaded.
+                store = BinaryLogFormat.load(file, parseState);
+            }
+            else if(GzipLogLoader.isGzip(file)) {
+                // Compressed logs are decompressed as they are
+                // parsed, and are likewise always simply loaded.
+                store = new GzipLogLoader().load(file, parseState);
+            }
+            else if(mode == ReadMode.PARALLEL) {
+                store = new ParallelLogLoader().load(file, parseState);
+            }
+            else if(mode == ReadMode.MAPPED) {
+                store = new MappedLogLoader().load(file, parseState);
+            }
+            else if(mode == ReadMode.PIPELINE) {
+                store = new LogPipeline().load(file, parseState);
+            }
+            else if(mode == ReadMode.FOLLOW) {
+                store = new LogStore();
+                follower = new LogfileFollower(file, 0, parseState);
+                follower.readNew(store);
+            }
+            else {
+                store = new LogStore();
+                LoglineTokenizer tokenizer = new LoglineTokenizer(parseState);
+                int[] dataLine = new int[6];
+                Scanner logfile = new Scanner(file);
+                // Read the data lines until the end of file.
+                while(logfile.hasNextLine()) {
+                    String logline = logfile.nextLine();
+                    // Break up the line and add it to the store.
+                    if(tokenizer.tryTokenize(logline, dataLine)) {
+                        store.add(LogEntry.pack(dataLine));
+                    }
+                }
+                logfile.close();
+            }
+            if(store != null) {
+                LogMetrics.stopTimer(LogMetrics.Stage.LOAD, startTime);
+                LogMetrics.linesRead(store.size(),
+                                     follower != null ? follower.getOffset() : file.length());
+                parseState.printSummary();
+            }
             dataRead = true;
         }
-        catch(FileNotFoundException | URISyntaxException e) {
+        catch(IOException | URISyntaxException e) {
             System.out.println("Problem encountered: " + e);
             dataRead = false;
         }
+        finally {
+            // The load is over, unless the file is streamed,
+            // in which case the stream closes the state.
+            if(parseState != null && stream == null) {
+                parseState.close();
+            }
+        }
         // If we couldn't read the log file, use simulated data.
         if(!dataRead) {
             System.out.println("Failed to read the data file: " + filename);
             System.out.println("Using simulated data instead.");
-            createSimulatedData(entries);
+            file = null;
+            parseState = new LogParseState(null, errorPolicy);
+            store = new LogStore();
+            createSimulatedData(store);
+        }
+        if(store != null) {
+            // Sort the entries into ascending order, unless
+            // they are in order already.
+            outOfOrderCount = store.countOutOfOrder();
+            if(outOfOrderCount > 0) {
+                sortStore();
+            }
+        }
+        reset();
+    }
+    
+    /**
+     * Create a LogfileReader that supplies data already held
+     * in a store, rather than read from a file.
+     * The entries are sorted, unless they are in order already.
+     * @param store The entries to supply.
+     */
+    public LogfileReader(LogStore store)
+    {
+        format = "Year Month(1-12) Day Hour Minute [Code]";
+        mode = ReadMode.LOAD;
+        file = null;
+        errorPolicy = LogErrorPolicy.skip();
+        parseState = new LogParseState(null, errorPolicy);
+        this.store = store;
+        outOfOrderCount = store.countOutOfOrder();
+        if(outOfOrderCount > 0) {
+            sortStore();
         }
-        // Sort the entries into ascending order.
-        Collections.sort(entries);
         reset();
     }
     
@@ -123,14 +257,68 @@ public class LogfileReader implements Iterator<LogEntry>
         return format;
     }
     
+    /**
+     * @return The log file, or null if simulated data is being used.
+     */
+    public File getFile()
+    {
+        return file;
+    }
+    
+    /**
+     * @return How the data is supplied.
+     */
+    public ReadMode getMode()
+    {
+        return mode;
+    }
+    
+    /**
+     * Return how many lines of the file could not be parsed.
+     * When streaming, this only covers the latest pass through
+     * the file.
+     * @return The number of lines that could not be parsed.
+     */
+    public int getErrorCount()
+    {
+        return parseState.getErrorCount();
+    }
+    
+    /**
+     * Return how many entries were found to be earlier than the
+     * entry before them in the file. When streaming, this only
+     * covers the entries supplied since the last reset.
+     * @return The number of out of order entries.
+     */
+    public int getOutOfOrderCount()
+    {
+        if(stream != null) {
+            return stream.getOutOfOrderCount();
+        }
+        return outOfOrderCount;
+    }
+    
     /**
      * Set up a fresh iterator to provide access to the data.
      * This allows a single file of data to be processed
-     * more than once.
+     * more than once. A streamed file is opened again.
      */
     public void reset()
     {
-        dataIterator = entries.iterator();
+        if(store != null) {
+            dataIterator = store.iterator();
+        }
+        else {
+            stream.close();
+            try {
+                parseState = new LogParseState(file, errorPolicy);
+                stream = new LogfileStream(file, 0, parseState);
+            }
+            catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            dataIterator = stream;
+        }
     }
 
     /**
@@ -138,18 +326,202 @@ public class LogfileReader implements Iterator<LogEntry>
      */    
     public void printData()
     {
-        for(LogEntry entry : entries) {
-            System.out.println(entry);
+        if(store != null) {
+            for(LogEntry entry : store) {
+                System.out.println(entry);
+            }
+        }
+        else {
+            try (LogfileStream data = new LogfileStream(file, 0,
+                                                        new LogParseState(file, errorPolicy))) {
+                while(data.hasNext()) {
+                    System.out.println(data.next());
+                }
+            }
+            catch(IOException e) {
+                System.out.println("Problem encountered: " + e);
+            }
+        }
+    }
+    
+    /**
+     * Find a log file with respect to the current environment.
+     * The file is looked for alongside the classes first, and
+     * then as an ordinary path on the file system.
+     * @param filename The name or path of the file.
+     * @return The file.
+     */
+    public static File locateFile(String filename)
+        throws FileNotFoundException, URISyntaxException
+    {
+        URL fileURL = LogfileReader.class.getClassLoader().getResource(filename);
+        if(fileURL != null) {
+            return new File(fileURL.toURI());
+        }
+        File file = new File(filename);
+        if(!file.isFile()) {
+            throw new FileNotFoundException(filename);
+        }
+        return file;
+    }
+    
+    /**
+     * Read any lines that have been added to the end of the log
+     * file since it was last read, and give their entries to an
+     * accumulator. This only reads the new part of the file.
+     * If the file has shrunk or been replaced, all of it is read
+     * again and -1 is returned; nothing is given to the accumulator
+     * in that case. If reading stops part way through the new lines,
+     * the entries that were kept are still given to the accumulator,
+     * and the next refresh carries on after them.
+     * Only readers in FOLLOW mode can be refreshed. Call reset()
+     * afterwards to iterate over the new data.
+     * @param accumulator The accumulator for the new entries.
+     * @return The number of new entries, or -1 if the whole file
+     *         was read again.
+     * @throws IOException If the file cannot be read.
+     */
+    public int refresh(LogAccumulator accumulator) throws IOException
+    {
+        if(follower == null) {
+            throw new IllegalStateException("Only a reader in FOLLOW mode can be refreshed");
+        }
+        if(follower.wasTruncated()) {
+            store = new LogStore();
+            follower.restart();
+            try {
+                follower.readNew(store);
+            }
+            finally {
+                parseState.close();
+            }
+            LogMetrics.linesRead(store.size(), follower.getOffset());
+            outOfOrderCount = store.countOutOfOrder();
+            if(outOfOrderCount > 0) {
+                sortStore();
+            }
+            return -1;
+        }
+        int oldSize = store.size();
+        long oldOffset = follower.getOffset();
+        try {
+            follower.readNew(store);
+        }
+        finally {
+            parseState.close();
+            LogMetrics.linesRead(store.size() - oldSize, follower.getOffset() - oldOffset);
+            for(int i = oldSize; i < store.size(); i++) {
+                accumulator.accumulate(store.get(i));
+            }
+        }
+        int added = store.size() - oldSize;
+        // The new entries are normally later than the old ones,
+        // so only sort when they are not.
+        int newOutOfOrder = store.countOutOfOrder(oldSize);
+        if(newOutOfOrder > 0) {
+            outOfOrderCount += newOutOfOrder;
+            sortStore();
+        }
+        return added;
+    }
+    
+    /**
+     * Sort the store, timing it if metrics are enabled.
+     */
+    private void sortStore()
+    {
+        long startTime = LogMetrics.startTimer();
+        store.sort();
+        LogMetrics.stopTimer(LogMetrics.Stage.SORT, startTime);
+    }
+    
+    /**
+     * Give every entry, in order, to an accumulator. This does not
+     * change where the reader has got to with next(). When the data
+     * is held in memory the records are scanned directly, without
+     * creating LogEntry objects.
+     * @param accumulator The accumulator to fill in.
+     */
+    public void scan(LogAccumulator accumulator)
+    {
+        if(store != null) {
+            store.scan(accumulator);
         }
+        else {
+            parseState = new LogParseState(file, errorPolicy);
+            try (LogfileStream data = new LogfileStream(file, 0, parseState)) {
+                long lines = 0;
+                while(data.hasNext()) {
+                    accumulator.accumulate(data.next().getRecord());
+                    lines++;
+                }
+                LogMetrics.linesRead(lines, file.length());
+            }
+            catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+    
+    /**
+     * Give the entries from a range of times, in order, to an
+     * accumulator. Only the entries in the range are looked at:
+     * a binary search finds where the range starts, in memory or,
+     * for a streamed file, in the file itself.
+     * @param fromTime The packed time to start at (see LogEntry.packTime).
+     * @param toTime The packed time to stop before.
+     * @param accumulator The accumulator to fill in.
+     */
+    public void scanRange(long fromTime, long toTime, LogAccumulator accumulator)
+    {
+        if(store != null) {
+            int size = store.size();
+            for(int i = store.indexOf(fromTime); i < size; i++) {
+                long record = store.get(i);
+                if(LogEntry.timeOf(record) >= toTime) {
+                    break;
+                }
+                accumulator.accumulate(record);
+            }
+        }
+        else {
+            parseState = new LogParseState(file, errorPolicy);
+            try (LogfileStream data = new LogfileStream(file, LogfileStream.findStart(file, fromTime),
+                                                        parseState)) {
+                while(data.hasNext()) {
+                    long record = data.next().getRecord();
+                    long time = LogEntry.timeOf(record);
+                    if(time >= toTime) {
+                        break;
+                    }
+                    if(time >= fromTime) {
+                        accumulator.accumulate(record);
+                    }
+                }
+            }
+            catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+    
+    /**
+     * Return the store holding the data, so that it can be
+     * scanned directly.
+     * @return The store, or null if the file is being streamed.
+     */
+    public LogStore getStore()
+    {
+        return store;
     }
 
     /**
      * Provide a sample of simulated data.
      * NB: To simplify the creation of this data, no
      * days after the 28th of a month are ever generated.
-     * @param data Where to store the simulated LogEntry objects.
+     * @param data Where to store the simulated entries.
      */
-    private void createSimulatedData(ArrayList<LogEntry> data)
+    private void createSimulatedData(LogStore data)
     {
         LogfileCreator creator = new LogfileCreator();
         // How many simulated entries we want.
@@ -0,0 +1,345 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Supply the entries of a log file one at a time, straight from
+ * the file, so that only the current line is ever held in memory.
+ * The file is expected to be in ascending order of date already,
+ * as written by LogfileCreator. Any entry that is earlier than the
+ * one before it is reported and counted, but still supplied.
+ * Binary logs (see BinaryLogFormat) are recognised by their
+ * header and streamed in the same way, as are gzip-compressed
+ * text logs, which are decompressed as they are read.
+ *
+ * @author Steve Cate
+ * @version    10/17/26
+ */
+public class LogfileStream implements Iterator<LogEntry>, Closeable
+{
+    // The file being read.
+    private File file;
+    // Where the lines are read from. Null once the file is finished,
+    // or if the file is a binary log.
+    private BufferedReader input;
+    // Where the records are read from, if the file is a binary log.
+    private DataInputStream binaryInput;
+    // Where each record of a binary log is read into.
+    private byte[] recordBytes;
+    // Where the next record of a binary log starts in the file.
+    private long recordOffset;
+    // What to do with lines or records that cannot be used.
+    private LogParseState state;
+    // The entry that will be returned by the next call to next().
+    private LogEntry nextEntry;
+    // The entry that was read before nextEntry.
+    private LogEntry previousEntry;
+    // The number of the line that nextEntry came from.
+    private int lineNumber;
+    // How many entries were found to be out of order.
+    private int outOfOrderCount;
+    // Breaks up the lines of a text log.
+    private LoglineTokenizer tokenizer;
+    // Where each line's values are put.
+    private int[] dataLine;
+
+    // How much of a text log findStart() reads at a time.
+    private static final int SEARCH_BLOCK_BYTES = 4096;
+
+    /**
+     * Open a log file for streaming.
+     * @param file The file of log data.
+     * @throws IOException If the file cannot be opened.
+     */
+    public LogfileStream(File file) throws IOException
+    {
+        this(file, 0);
+    }
+
+    /**
+     * Open a log file for streaming from part way through,
+     * such as a position found by findStart().
+     * @param file The file of log data.
+     * @param offset Where to start reading. This must be the
+     *               start of a line, or of a binary record.
+     *               Compressed logs are always read from the start.
+     * @throws IOException If the file cannot be opened.
+     */
+    public LogfileStream(File file, long offset) throws IOException
+    {
+        this(file, offset, new LogParseState(file, LogErrorPolicy.skip()));
+    }
+
+    /**
+     * Open a log file for streaming from part way through,
+     * dealing with lines that cannot be parsed in a particular way.
+     * @param file The file of log data.
+     * @param offset Where to start reading. This must be the
+     *               start of a line, or of a binary record.
+     *               Compressed logs are always read from the start.
+     * @param state What to do with lines that cannot be parsed.
+     * @throws IOException If the file cannot be opened.
+     */
+    public LogfileStream(File file, long offset, LogParseState state) throws IOException
+    {
+        this.file = file;
+        boolean binary = BinaryLogFormat.isBinary(file);
+        boolean compressed = !binary && GzipLogLoader.isGzip(file);
+        FileInputStream fileInput = new FileInputStream(file);
+        if(binary) {
+            offset = Math.max(offset, BinaryLogFormat.HEADER_BYTES);
+            recordOffset = offset;
+        }
+        this.state = state;
+        if(!compressed) {
+            fileInput.getChannel().position(offset);
+        }
+        BufferedInputStream bytes = new BufferedInputStream(fileInput);
+        if(binary) {
+            binaryInput = new DataInputStream(bytes);
+            recordBytes = new byte[BinaryLogFormat.RECORD_BYTES];
+        }
+        else if(compressed) {
+            input = new BufferedReader(new InputStreamReader(new GZIPInputStream(bytes, 1 << 16)));
+        }
+        else {
+            input = new BufferedReader(new InputStreamReader(bytes));
+        }
+        lineNumber = 0;
+        outOfOrderCount = 0;
+        tokenizer = new LoglineTokenizer(state);
+        dataLine = new int[6];
+        advance();
+    }
+
+    /**
+     * Does the stream have more data to supply?
+     * @return true if there is more data available,
+     *         false otherwise.
+     */
+    public boolean hasNext()
+    {
+        return nextEntry != null;
+    }
+
+    /**
+     * Return the next entry from the file.
+     * @return A LogEntry containing the data from the
+     *         next log line.
+     */
+    public LogEntry next()
+    {
+        if(nextEntry == null) {
+            throw new NoSuchElementException();
+        }
+        LogEntry entry = nextEntry;
+        advance();
+        return entry;
+    }
+
+    /**
+     * Find where to start streaming a sorted log file in order to
+     * reach the entries at or after a time, by binary search over
+     * the file. Only a few small parts of the file are read.
+     * The position found may be a little before the first such
+     * entry, but never after it.
+     * @param file The log file, which must be in order of date.
+     * @param time A packed time (see LogEntry.packTime).
+     * @return A position to give to the LogfileStream constructor.
+     * @throws IOException If the file cannot be read.
+     */
+    public static long findStart(File file, long time) throws IOException
+    {
+        if(GzipLogLoader.isGzip(file)) {
+            // A compressed log can only be read from the start.
+            return 0;
+        }
+        boolean binary = BinaryLogFormat.isBinary(file);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if(binary) {
+                // Records are all the same size, so search them directly.
+                ByteBuffer record = ByteBuffer.allocate(BinaryLogFormat.RECORD_BYTES);
+                long low = 0;
+                long high = (channel.size() - BinaryLogFormat.HEADER_BYTES) /
+                            BinaryLogFormat.RECORD_BYTES;
+                while(low < high) {
+                    long middle = (low + high) >>> 1;
+                    record.clear();
+                    channel.read(record, BinaryLogFormat.HEADER_BYTES +
+                                         middle * BinaryLogFormat.RECORD_BYTES);
+                    if(LogEntry.timeOf(record.getLong(0)) < time) {
+                        low = middle + 1;
+                    }
+                    else {
+                        high = middle;
+                    }
+                }
+                return BinaryLogFormat.HEADER_BYTES + low * BinaryLogFormat.RECORD_BYTES;
+            }
+
+            // Lines vary in length, so look at the first line that starts
+            // after the middle of the range. low is always the start of a
+            // line that is before the time, or the start of the file.
+            LoglineTokenizer tokenizer = new LoglineTokenizer();
+            int[] dataLine = new int[5];
+            byte[] block = new byte[SEARCH_BLOCK_BYTES];
+            long low = 0;
+            long high = channel.size();
+            while(high - low > SEARCH_BLOCK_BYTES) {
+                long middle = (low + high) >>> 1;
+                int count = channel.read(ByteBuffer.wrap(block), middle);
+                int lineStart = 0;
+                while(lineStart < count && block[lineStart] != '\n') {
+                    lineStart++;
+                }
+                lineStart++;
+                int lineEnd = lineStart;
+                while(lineEnd < count && block[lineEnd] != '\n') {
+                    lineEnd++;
+                }
+                if(lineEnd >= count ||
+                   tokenizer.parseFields(block, lineStart, lineEnd, dataLine) < dataLine.length ||
+                   !LogEntry.isValid(dataLine[0], dataLine[1], dataLine[2],
+                                     dataLine[3], dataLine[4], 0)) {
+                    // No good line to look at; search the earlier half.
+                    high = middle;
+                }
+                else if(LogEntry.packTime(dataLine[0], dataLine[1], dataLine[2],
+                                          dataLine[3], dataLine[4]) < time) {
+                    low = middle + lineStart;
+                }
+                else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * Return how many entries so far have been found to be
+     * earlier than the entry before them.
+     * @return The number of out of order entries.
+     */
+    public int getOutOfOrderCount()
+    {
+        return outOfOrderCount;
+    }
+
+    /**
+     * Close the file, and the LogParseState's quarantine file.
+     * No more entries will be supplied.
+     */
+    public void close()
+    {
+        try {
+            if(input != null) {
+                input.close();
+            }
+            if(binaryInput != null) {
+                binaryInput.close();
+            }
+            state.close();
+        }
+        catch(UncheckedIOException e) {
+            System.out.println("Problem encountered: " + e.getCause());
+        }
+        catch(IOException e) {
+            System.out.println("Problem encountered: " + e);
+        }
+        input = null;
+        binaryInput = null;
+        nextEntry = null;
+    }
+
+    /**
+     * Read ahead to the next line of the file and check
+     * that it is in order.
+     */
+    private void advance()
+    {
+        previousEntry = nextEntry;
+        nextEntry = null;
+        if(input == null && binaryInput == null) {
+            return;
+        }
+        try {
+            if(binaryInput != null) {
+                nextEntry = readRecord();
+            }
+            else {
+                String logline = input.readLine();
+                // Lines that cannot be parsed are passed over.
+                while(logline != null && !tokenizer.tryTokenize(logline, dataLine)) {
+                    lineNumber++;
+                    logline = input.readLine();
+                }
+                if(logline != null) {
+                    nextEntry = new LogEntry(LogEntry.pack(dataLine));
+                }
+            }
+        }
+        catch(IOException e) {
+            close();
+            throw new UncheckedIOException(e);
+        }
+        catch(RuntimeException e) {
+            // Too many lines could not be parsed.
+            close();
+            throw e;
+        }
+        if(nextEntry == null) {
+            close();
+            return;
+        }
+        lineNumber++;
+        if(previousEntry != null && nextEntry.compareTo(previousEntry) < 0) {
+            outOfOrderCount++;
+            System.out.println("Out of order entry " + lineNumber +
+                               ": " + nextEntry);
+        }
+    }
+
+    /**
+     * Read the next good record of a binary log. Records whose
+     * values are out of range are dealt with as the LogParseState
+     * says, and passed over.
+     * @return The entry, or null at the end of the file.
+     * @throws IOException If the file cannot be read, or if it
+     *         ends part way through a record.
+     */
+    private LogEntry readRecord() throws IOException
+    {
+        while(true) {
+            int read = binaryInput.readNBytes(recordBytes, 0, recordBytes.length);
+            if(read == 0) {
+                return null;
+            }
+            if(read < recordBytes.length) {
+                throw new IOException("Binary log ends part way through a record: " + file);
+            }
+            long record = 0;
+            for(byte b : recordBytes) {
+                record = (record << 8) | (b & 0xFF);
+            }
+            long offset = recordOffset;
+            recordOffset += recordBytes.length;
+            if(LogEntry.isValid(record)) {
+                return new LogEntry(record);
+            }
+            state.rejectRecord(offset, record);
+        }
+    }
+}
@@ -1,43 +1,437 @@
-import java.util.Scanner;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
 
 /**
  * Break up line from a web server log file into
  * its separate fields.
  * Currently, the log file is assumed to contain simply
- * integer date and time information.
- * 
+ * integer date and time information, with or without
+ * a status code at the end.
+ * The fields are read directly from the characters or bytes
+ * of the line, so no objects are created while tokenizing.
+ *
+ * A tokenizer made with a LogParseState takes the number of fields
+ * from the state, which settles it from the first good line of the
+ * file, so such a tokenizer should only be used for the lines of
+ * one file. Any later line with a different number of fields is
+ * rejected. A tokenizer without a state keeps nothing from line to
+ * line, and judges each line on its own. Lines with five fields
+ * are given NO_CODE as their status code.
+ *
  * @author David J. Barnes and Michael Kolling.
  * @version    2016.02.29
  */
 public class LoglineTokenizer
 {
+    // The code given to entries from a log without status codes.
+    public static final int NO_CODE = 0;
+    // Where the status code goes in a data array.
+    private static final int CODE = 5;
+    // Why a line is not good: too few values, or values out of range.
+    private static final int TOO_FEW = 0, OUT_OF_RANGE = -1;
+
+    // What is known about the file being read, or null if each
+    // line stands alone and any that cannot be parsed should fail.
+    private LogParseState state;
+    // The number of fields on each line, once the state knows it.
+    private int fieldCount;
+    // Where a line that is not already in a byte array is copied
+    // to be parsed, so that there is only one parser.
+    private byte[] line;
+
     /**
-     * Construct a LogLineAnalyzer
+     * Construct a LogLineAnalyzer that judges each line on
+     * its own, and fails on any line that cannot be parsed.
      */
     public LoglineTokenizer()
     {
+        this(null);
+    }
+
+    /**
+     * Construct a LogLineAnalyzer for the lines of a file.
+     * @param state What is known about the file, which also says
+     *              what to do with lines that cannot be parsed.
+     *              Null to fail on any such line.
+     */
+    public LoglineTokenizer(LogParseState state)
+    {
+        this.state = state;
+        fieldCount = LogParseState.UNKNOWN_FIELDS;
     }
 
     /**
      * Tokenize a log line. Place the integer values from
-     * it into an array. The number of tokens on the line
-     * must be sufficient to fill the array.
+     * it into an array of six values. The line must hold
+     * the five date and time values, and the status code
+     * if the lines before it did.
      *
      * @param logline The line to be tokenized.
      * @param dataLine Where to store the values.
+     * @throws NoSuchElementException If the line does not hold
+     *         enough integer values, or a value is out of range.
+     */
+    public void tokenize(CharSequence logline, int[] dataLine)
+    {
+        if(!tryTokenize(logline, dataLine)) {
+            throw new NoSuchElementException();
+        }
+    }
+
+    /**
+     * Tokenize a log line held as bytes, such as part of a buffer
+     * read straight from a file. Place the integer values from
+     * it into an array of six values. The line must hold
+     * the five date and time values, and the status code
+     * if the lines before it did.
+     *
+     * @param data The bytes holding the line.
+     * @param start The index of the first byte of the line.
+     * @param end The index just past the last byte of the line.
+     * @param dataLine Where to store the values.
+     * @throws NoSuchElementException If the line does not hold
+     *         enough integer values, or a value is out of range.
+     */
+    public void tokenize(byte[] data, int start, int end, int[] dataLine)
+    {
+        if(!tryTokenize(data, start, end, dataLine)) {
+            throw new NoSuchElementException();
+        }
+    }
+
+    /**
+     * Tokenize a log line held in a byte buffer, such as a file
+     * that has been mapped into memory. Place the integer values from
+     * it into an array of six values. The line must hold
+     * the five date and time values, and the status code
+     * if the lines before it did.
+     * The buffer's position and limit are not changed.
+     *
+     * @param data The buffer holding the line.
+     * @param start The index of the first byte of the line.
+     * @param end The index just past the last byte of the line.
+     * @param dataLine Where to store the values.
+     * @throws NoSuchElementException If the line does not hold
+     *         enough integer values, or a value is out of range.
+     */
+    public void tokenize(ByteBuffer data, int start, int end, int[] dataLine)
+    {
+        if(!tryTokenize(data, start, end, dataLine)) {
+            throw new NoSuchElementException();
+        }
+    }
+
+    /**
+     * Tokenize a log line, if it can be. A line that cannot
+     * be is dealt with as the tokenizer's LogParseState says.
+     *
+     * @param logline The line to be tokenized.
+     * @param dataLine Where to store the values. It must hold six.
+     * @return true if the values were stored, false if the
+     *         line could not be parsed or a value is out of range.
+     * @throws NoSuchElementException If the line could not be
+     *         parsed and there are too many such lines.
      */
-    public void tokenize(String logline, int[] dataLine)
+    public boolean tryTokenize(CharSequence logline, int[] dataLine)
     {
-        try {
-            // Scan the logline for integers.
-            Scanner tokenizer = new Scanner(logline);
-            for(int i = 0; i < dataLine.length; i++) {
-                dataLine[i] = tokenizer.nextInt();
+        int good = accept(parseFields(logline, dataLine), dataLine);
+        if(good > 0) {
+            return true;
+        }
+        reject(good, logline.toString());
+        return false;
+    }
+
+    /**
+     * Tokenize a log line held as bytes, if it can be. A line that
+     * cannot be is dealt with as the tokenizer's LogParseState says.
+     *
+     * @param data The bytes holding the line.
+     * @param start The index of the first byte of the line.
+     * @param end The index just past the last byte of the line.
+     * @param dataLine Where to store the values. It must hold six.
+     * @return true if the values were stored, false if the
+     *         line could not be parsed or a value is out of range.
+     * @throws NoSuchElementException If the line could not be
+     *         parsed and there are too many such lines.
+     */
+    public boolean tryTokenize(byte[] data, int start, int end, int[] dataLine)
+    {
+        int good = accept(parseFields(data, start, end, dataLine), dataLine);
+        if(good > 0) {
+            return true;
+        }
+        reject(good, new String(data, start, end - start, StandardCharsets.ISO_8859_1));
+        return false;
+    }
+
+    /**
+     * Tokenize a log line held in a byte buffer, if it can be. A line
+     * that cannot be is dealt with as the tokenizer's LogParseState says.
+     * The buffer's position and limit are not changed.
+     *
+     * @param data The buffer holding the line.
+     * @param start The index of the first byte of the line.
+     * @param end The index just past the last byte of the line.
+     * @param dataLine Where to store the values. It must hold six.
+     * @return true if the values were stored, false if the
+     *         line could not be parsed or a value is out of range.
+     * @throws NoSuchElementException If the line could not be
+     *         parsed and there are too many such lines.
+     */
+    public boolean tryTokenize(ByteBuffer data, int start, int end, int[] dataLine)
+    {
+        int good = accept(parseFields(data, start, end, dataLine), dataLine);
+        if(good > 0) {
+            return true;
+        }
+        byte[] bytes = new byte[end - start];
+        data.get(start, bytes);
+        reject(good, new String(bytes, StandardCharsets.ISO_8859_1));
+        return false;
+    }
+
+    /**
+     * Tokenize every line in a range of bytes, and pass the
+     * values of each line to an accumulator as a packed record.
+     * Lines that cannot be parsed are dealt with as the
+     * tokenizer's LogParseState says.
+     * The last line need not end with a newline.
+     *
+     * @param data The bytes of the log text.
+     * @param start The index of the first byte.
+     * @param end The index just past the last byte.
+     * @param accumulator Where to pass the records.
+     * @throws NoSuchElementException If there are too many
+     *         lines that cannot be parsed.
+     */
+    public void tokenizeLines(byte[] data, int start, int end, LogAccumulator accumulator)
+    {
+        int[] dataLine = new int[6];
+        int lineStart = start;
+        while(lineStart < end) {
+            int lineEnd = lineStart;
+            while(lineEnd < end && data[lineEnd] != '\n') {
+                lineEnd++;
             }
+            if(tryTokenize(data, lineStart, lineEnd, dataLine)) {
+                accumulator.accumulate(LogEntry.pack(dataLine));
+            }
+            lineStart = lineEnd + 1;
         }
-        catch(java.util.NoSuchElementException e) {
-            System.out.println("Insuffient data items on log line: " + logline);
-            throw e;
+    }
+
+    /**
+     * Work out how many fields a line of a log has, if it is a
+     * good line: one with the five date and time values, and
+     * perhaps a status code, all in range (see LogEntry.isValid).
+     * @param logline The line.
+     * @return DATE_FIELDS or CODED_FIELDS (see LogParseState),
+     *         or 0 if the line is not a good line.
+     */
+    public int countFields(CharSequence logline)
+    {
+        int[] dataLine = new int[LogParseState.CODED_FIELDS];
+        return Math.max(goodFields(parseFields(logline, dataLine), dataLine), 0);
+    }
+
+    /**
+     * Check that a line held the same number of values as the
+     * others in the file, if there is a file, all in range, and
+     * fill in the status code if the line has none.
+     * @param fields The number of values read from the line.
+     * @param dataLine The values.
+     * @return The number of fields if the line is good and agrees
+     *         with the file, otherwise TOO_FEW or OUT_OF_RANGE.
+     */
+    private int accept(int fields, int[] dataLine)
+    {
+        int good = goodFields(fields, dataLine);
+        if(good <= 0) {
+            return good;
         }
+        if(state != null) {
+            if(fieldCount == LogParseState.UNKNOWN_FIELDS) {
+                // The first good line of the file settles the number of fields.
+                fieldCount = state.detectFieldCount(good);
+            }
+            if(good != fieldCount) {
+                return TOO_FEW;
+            }
+        }
+        if(good == LogParseState.DATE_FIELDS) {
+            dataLine[CODE] = NO_CODE;
+        }
+        return good;
+    }
+
+    /**
+     * @param fields The number of values read from a line.
+     * @param dataLine The values.
+     * @return DATE_FIELDS or CODED_FIELDS, TOO_FEW if there are
+     *         too few values, or OUT_OF_RANGE if any is out of range.
+     */
+    private static int goodFields(int fields, int[] dataLine)
+    {
+        if(fields < LogParseState.DATE_FIELDS) {
+            return TOO_FEW;
+        }
+        int good = Math.min(fields, LogParseState.CODED_FIELDS);
+        int code = (good == LogParseState.CODED_FIELDS) ? dataLine[CODE] : NO_CODE;
+        if(!LogEntry.isValid(dataLine[0], dataLine[1], dataLine[2],
+                             dataLine[3], dataLine[4], code)) {
+            return OUT_OF_RANGE;
+        }
+        return good;
+    }
+
+    /**
+     * Deal with a line that could not be parsed.
+     * @param problem TOO_FEW or OUT_OF_RANGE.
+     * @param logline The line.
+     */
+    private void reject(int problem, String logline)
+    {
+        if(state != null && problem == OUT_OF_RANGE) {
+            state.rejectOutOfRange(logline);
+        }
+        else if(state != null) {
+            state.reject(logline);
+        }
+        else {
+            if(problem == OUT_OF_RANGE) {
+                System.out.println("Values out of range on log line: " + logline);
+            }
+            else {
+                System.out.println("Insufficient data items on log line: " + logline);
+            }
+            LogMetrics.parseFailed(logline);
+            throw new NoSuchElementException();
+        }
+    }
+
+    /**
+     * Read as many integer values from a log line as will fit
+     * into the array. Reading stops early at the end of the line
+     * or at the first item that is not an integer.
+     *
+     * @param logline The line to be read.
+     * @param dataLine Where to store the values.
+     * @return The number of values stored.
+     */
+    public int parseFields(CharSequence logline, int[] dataLine)
+    {
+        int length = logline.length();
+        byte[] line = lineBuffer(length);
+        for(int i = 0; i < length; i++) {
+            char c = logline.charAt(i);
+            // Anything that is not a single byte is neither a digit nor a space.
+            line[i] = (c < 0x100) ? (byte) c : 0;
+        }
+        return parseFields(line, 0, length, dataLine);
+    }
+
+    /**
+     * Read as many integer values from a log line held as bytes
+     * as will fit into the array. Reading stops early at the end
+     * of the line or at the first item that is not an integer.
+     *
+     * @param data The bytes holding the line.
+     * @param start The index of the first byte of the line.
+     * @param end The index just past the last byte of the line.
+     * @param dataLine Where to store the values.
+     * @return The number of values stored.
+     */
+    public int parseFields(byte[] data, int start, int end, int[] dataLine)
+    {
+        int pos = start;
+        int field = 0;
+        while(field < dataLine.length) {
+            // Skip the whitespace before the next item.
+            while(pos < end && isWhitespace(data[pos])) {
+                pos++;
+            }
+            if(pos == end) {
+                return field;
+            }
+            boolean negative = false;
+            byte b = data[pos];
+            if(b == '-' || b == '+') {
+                negative = (b == '-');
+                pos++;
+            }
+            // Build up the value one digit at a time.
+            int digitsStart = pos;
+            long value = 0;
+            while(pos < end && value <= Integer.MAX_VALUE) {
+                b = data[pos];
+                if(b < '0' || b > '9') {
+                    break;
+                }
+                value = value * 10 + (b - '0');
+                pos++;
+            }
+            if(pos == digitsStart || value > Integer.MAX_VALUE ||
+               (pos < end && !isWhitespace(data[pos]))) {
+                // Not an integer.
+                return field;
+            }
+            dataLine[field] = (int) (negative ? -value : value);
+            field++;
+        }
+        return field;
+    }
+
+    /**
+     * Read as many integer values from a log line held in a byte
+     * buffer as will fit into the array. Reading stops early at the
+     * end of the line or at the first item that is not an integer.
+     * The buffer's position and limit are not changed.
+     *
+     * A buffer backed by an array is parsed where it is. A mapped
+     * file is not: each line is copied out with one bulk get() and
+     * parsed as an array. Reading the mapped bytes one at a time
+     * with get(i) was measured at 145-180ms for a million lines,
+     * against 90-110ms for copying each line, because every get(i)
+     * on a mapped buffer is checked separately.
+     *
+     * @param data The buffer holding the line.
+     * @param start The index of the first byte of the line.
+     * @param end The index just past the last byte of the line.
+     * @param dataLine Where to store the values.
+     * @return The number of values stored.
+     */
+    public int parseFields(ByteBuffer data, int start, int end, int[] dataLine)
+    {
+        if(data.hasArray()) {
+            int offset = data.arrayOffset();
+            return parseFields(data.array(), offset + start, offset + end, dataLine);
+        }
+        byte[] line = lineBuffer(end - start);
+        data.get(start, line, 0, end - start);
+        return parseFields(line, 0, end - start, dataLine);
+    }
+
+    /**
+     * @param length The length of a line.
+     * @return A buffer to copy the line into, reused from line to line.
+     */
+    private byte[] lineBuffer(int length)
+    {
+        if(line == null || line.length < length) {
+            line = new byte[Math.max(length, 128)];
+        }
+        return line;
+    }
+
+    /**
+     * @param b A byte from a log file.
+     * @return true if the byte is an ASCII whitespace character.
+     */
+    private static boolean isWhitespace(byte b)
+    {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r' ||
+               b == '\f' || b == 0x0B;
     }
 }
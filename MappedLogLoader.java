@@ -0,0 +1,112 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Load a log file into a LogStore by mapping it into memory and
+ * reading the fields straight from the mapped bytes. No Strings
+ * are created for the lines and no characters are decoded.
+ * A file is mapped one window at a time, so files of any size,
+ * including those over 2GB, can be read.
+ *
+ * @author Steve Cate
+ * @version    10/17/26
+ */
+public class MappedLogLoader
+{
+    // The default size of each mapped window.
+    private static final int DEFAULT_WINDOW_BYTES = 256 << 20;
+
+    // How much of the file is mapped at a time.
+    private int windowBytes;
+
+    /**
+     * Create a loader that maps the default window size.
+     */
+    public MappedLogLoader()
+    {
+        this(DEFAULT_WINDOW_BYTES);
+    }
+
+    /**
+     * Create a loader that maps a particular window size.
+     * @param windowBytes How many bytes to map at a time. This must
+     *                    be larger than the longest line in the file.
+     */
+    public MappedLogLoader(int windowBytes)
+    {
+        if(windowBytes <= 0) {
+            throw new IllegalArgumentException("Window size must be positive: " + windowBytes);
+        }
+        this.windowBytes = windowBytes;
+    }
+
+    /**
+     * Read every line of a log file into a store. The records are
+     * in the same order as the lines of the file; they are not sorted.
+     * Lines that cannot be parsed are skipped.
+     * @param file The log file.
+     * @return The records of the file.
+     * @throws IOException If the file cannot be read.
+     */
+    public LogStore load(File file) throws IOException
+    {
+        return load(file, new LogParseState(file, LogErrorPolicy.skip()));
+    }
+
+    /**
+     * Read every line of a log file into a store. The records are
+     * in the same order as the lines of the file; they are not sorted.
+     * @param file The log file.
+     * @param state What to do with lines that cannot be parsed.
+     * @return The records of the file.
+     * @throws IOException If the file cannot be read.
+     * @throws java.util.NoSuchElementException If there are too
+     *         many lines that cannot be parsed.
+     */
+    public LogStore load(File file, LogParseState state) throws IOException
+    {
+        LogStore store = new LogStore();
+        LoglineTokenizer tokenizer = new LoglineTokenizer(state);
+        int[] dataLine = new int[6];
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long windowStart = 0;
+            while(windowStart < size) {
+                int length = (int) Math.min(windowBytes, size - windowStart);
+                boolean lastWindow = (windowStart + length == size);
+                MappedByteBuffer window =
+                    channel.map(FileChannel.MapMode.READ_ONLY, windowStart, length);
+
+                // Parse each complete line in the window.
+                int lineStart = 0;
+                for(int i = 0; i < length; i++) {
+                    if(window.get(i) == '\n') {
+                        if(tokenizer.tryTokenize(window, lineStart, i, dataLine)) {
+                            store.add(LogEntry.pack(dataLine));
+                        }
+                        lineStart = i + 1;
+                    }
+                }
+                if(lastWindow) {
+                    // The last line need not end with a newline.
+                    if(lineStart < length &&
+                       tokenizer.tryTokenize(window, lineStart, length, dataLine)) {
+                        store.add(LogEntry.pack(dataLine));
+                    }
+                    lineStart = length;
+                }
+                else if(lineStart == 0) {
+                    throw new IOException("Line longer than the window of " + windowBytes +
+                                          " bytes at offset " + windowStart);
+                }
+                // Start the next window at the first unfinished line.
+                windowStart += lineStart;
+            }
+        }
+        return store;
+    }
+}
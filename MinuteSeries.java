@@ -0,0 +1,240 @@
+import java.util.Arrays;
+
+/**
+ * Count the accesses in a log for every minute it covers, so that
+ * the busiest period of any length can be found. The counts are
+ * kept in a primitive array for each day, and days with no accesses
+ * take no space. Finding the busiest window slides a running total
+ * over the minutes, so each search takes a single pass whatever
+ * the length of the window.
+ *
+ * Dates are counted the way a lenient Calendar counts them, so
+ * 31 February is treated as 3 March (or 2 March in a leap year).
+ *
+ * @author Steve Cate
+ * @version    10/17/26
+ */
+public class MinuteSeries implements LogAccumulator
+{
+    // How many minutes there are in a day.
+    public static final int MINUTES_PER_DAY = 24 * 60;
+
+    // The counts for each day, starting at firstDay.
+    // A day with nothing in it may be null.
+    private int[][] days;
+    // The day that days[0] holds, counted from 1 January 1970.
+    private long firstDay;
+    // The date part of the last record counted, and its day number,
+    // since records for the same day tend to come together.
+    private long lastDate;
+    private long lastDay;
+
+    /**
+     * Create an empty series.
+     */
+    public MinuteSeries()
+    {
+        clear();
+    }
+
+    /**
+     * Count an entry against its minute.
+     * @param record The entry to count, as a packed record.
+     */
+    public void accumulate(long record)
+    {
+        long minute = minuteOf(record);
+        int[] day = dayFor(Math.floorDiv(minute, MINUTES_PER_DAY));
+        day[Math.floorMod(minute, MINUTES_PER_DAY)]++;
+    }
+
+    /**
+     * Return how many accesses there were in a minute.
+     * @param time A packed time (see LogEntry.packTime).
+     * @return The number of accesses.
+     */
+    public int getCount(long time)
+    {
+        return countAt(minuteOf(LogEntry.recordAt(time)));
+    }
+
+    /**
+     * Count the accesses in a window of minutes.
+     * @param startTime The packed time of the first minute.
+     * @param minutes How many minutes the window lasts.
+     * @return The number of accesses in the window.
+     */
+    public int countInWindow(long startTime, int minutes)
+    {
+        long start = minuteOf(LogEntry.recordAt(startTime));
+        int total = 0;
+        for(long minute = start; minute < start + minutes; minute++) {
+            total += countAt(minute);
+        }
+        return total;
+    }
+
+    /**
+     * Find the window of a given number of minutes with the most
+     * accesses in it, by sliding a running total over the series.
+     * @param minutes How many minutes the window lasts.
+     * @return The packed time (see LogEntry.packTime) that the
+     *         earliest of the busiest windows starts at, or -1
+     *         if nothing has been counted.
+     */
+    public long busiestWindow(int minutes)
+    {
+        if(minutes <= 0) {
+            throw new IllegalArgumentException("Window must be at least a minute: " + minutes);
+        }
+        if(days == null) {
+            return -1;
+        }
+        long first = firstDay * MINUTES_PER_DAY;
+        long end = (firstDay + days.length) * MINUTES_PER_DAY;
+
+        // The total for the window that ends just before minute.
+        int total = 0;
+        int most = -1;
+        long mostStart = first;
+        for(long minute = first; minute < end; minute++) {
+            total += countAt(minute);
+            if(minute - minutes >= first) {
+                total -= countAt(minute - minutes);
+            }
+            long start = Math.max(first, minute - minutes + 1);
+            if(total > most) {
+                most = total;
+                mostStart = start;
+            }
+        }
+        return timeOf(mostStart);
+    }
+
+    /**
+     * @return The number of days the series covers, from the first
+     *         day with an access to the last.
+     */
+    public int getDays()
+    {
+        return (days == null) ? 0 : days.length;
+    }
+
+    /**
+     * Remove all of the counts.
+     */
+    public void clear()
+    {
+        days = null;
+        firstDay = 0;
+        lastDate = -1;
+        lastDay = 0;
+    }
+
+    /**
+     * Set all of the counts back to zero, as clear() does.
+     */
+    public void reset()
+    {
+        clear();
+    }
+
+    /**
+     * @param minute A minute, counted from the start of 1 January 1970.
+     * @return The number of accesses in that minute.
+     */
+    private int countAt(long minute)
+    {
+        long day = Math.floorDiv(minute, MINUTES_PER_DAY);
+        if(days == null || day < firstDay || day >= firstDay + days.length) {
+            return 0;
+        }
+        int[] counts = days[(int) (day - firstDay)];
+        return (counts == null) ? 0 : counts[Math.floorMod(minute, MINUTES_PER_DAY)];
+    }
+
+    /**
+     * Return the counts for a day, making room for them if need be.
+     * @param day A day, counted from 1 January 1970.
+     * @return The counts for the day.
+     */
+    private int[] dayFor(long day)
+    {
+        if(days == null) {
+            days = new int[1][];
+            firstDay = day;
+        }
+        else if(day < firstDay) {
+            int[][] grown = new int[days.length + (int) (firstDay - day)][];
+            System.arraycopy(days, 0, grown, (int) (firstDay - day), days.length);
+            days = grown;
+            firstDay = day;
+        }
+        else if(day >= firstDay + days.length) {
+            days = Arrays.copyOf(days, (int) (day - firstDay + 1));
+        }
+        int index = (int) (day - firstDay);
+        if(days[index] == null) {
+            days[index] = new int[MINUTES_PER_DAY];
+        }
+        return days[index];
+    }
+
+    /**
+     * @param record A packed record.
+     * @return The minute of the record, counted from the start
+     *         of 1 January 1970.
+     */
+    private long minuteOf(long record)
+    {
+        long date = LogEntry.dateOf(record);
+        if(date != lastDate) {
+            lastDay = dayNumber(LogEntry.yearOf(record), LogEntry.monthOf(record),
+                                LogEntry.dayOf(record));
+            lastDate = date;
+        }
+        return lastDay * MINUTES_PER_DAY +
+               LogEntry.hourOf(record) * 60 + LogEntry.minuteOf(record);
+    }
+
+    /**
+     * @param minute A minute, counted from the start of 1 January 1970.
+     * @return The packed time of the minute.
+     */
+    private static long timeOf(long minute)
+    {
+        // Turn the day number back into a date; the reverse of dayNumber.
+        long z = Math.floorDiv(minute, MINUTES_PER_DAY) + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 -
+                          dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+        int month = (int) (shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9);
+        int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+        int minuteOfDay = Math.floorMod(minute, MINUTES_PER_DAY);
+        return LogEntry.packTime(year, month, day, minuteOfDay / 60, minuteOfDay % 60);
+    }
+
+    /**
+     * Count the days from 1 January 1970 to a date. Days past the
+     * end of the month run on into the next month.
+     * @param year The year.
+     * @param month The month (1-12).
+     * @param day The day of the month.
+     * @return The day number.
+     */
+    private static long dayNumber(int year, int month, int day)
+    {
+        // Count from 1 March, so that a leap day comes at the end of the year.
+        long y = (month <= 2) ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long shiftedMonth = (month + 9) % 12;
+        long dayOfYear = (153 * shiftedMonth + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+}
@@ -0,0 +1,209 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Load a log file into a LogStore using several threads.
+ * The file is split into byte ranges that each end on a line
+ * boundary, each range is parsed into its own LogStore on a
+ * fork/join pool, and the stores are then joined together in
+ * file order. The result is exactly what reading the file one
+ * line at a time would give.
+ *
+ * @author Steve Cate
+ * @version    10/17/26
+ */
+public class ParallelLogLoader
+{
+    // The smallest range worth handing to a separate task.
+    private static final int MIN_CHUNK_BYTES = 1 << 20;
+    // The largest range, so that a range always fits in a byte array.
+    private static final int MAX_CHUNK_BYTES = 64 << 20;
+    // How many ranges to aim for per thread, to even out the work.
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    // The pool that parses the ranges.
+    private ForkJoinPool pool;
+
+    /**
+     * Create a loader that uses the common fork/join pool.
+     */
+    public ParallelLogLoader()
+    {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Create a loader that uses a particular pool.
+     * @param pool The pool to parse the file on.
+     */
+    public ParallelLogLoader(ForkJoinPool pool)
+    {
+        this.pool = pool;
+    }
+
+    /**
+     * Read every line of a log file into a store. The records are
+     * in the same order as the lines of the file; they are not sorted.
+     * Lines that cannot be parsed are skipped.
+     * @param file The log file.
+     * @return The records of the file.
+     * @throws IOException If the file cannot be read.
+     */
+    public LogStore load(File file) throws IOException
+    {
+        return load(file, new LogParseState(file, LogErrorPolicy.skip()));
+    }
+
+    /**
+     * Read every line of a log file into a store. The records are
+     * in the same order as the lines of the file; they are not sorted.
+     * @param file The log file.
+     * @param state What to do with lines that cannot be parsed. It is
+     *              shared by the threads, so the number of columns is
+     *              settled once for the whole file.
+     * @return The records of the file.
+     * @throws IOException If the file cannot be read.
+     * @throws java.util.NoSuchElementException If there are too
+     *         many lines that cannot be parsed.
+     */
+    public LogStore load(File file, LogParseState state) throws IOException
+    {
+        state.detectFieldCount();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            List<ChunkParser> tasks = new ArrayList<>();
+            for(long[] range : splitIntoRanges(channel)) {
+                tasks.add(new ChunkParser(channel, range[0], range[1], state));
+            }
+            try {
+                for(ChunkParser task : tasks) {
+                    pool.execute(task);
+                }
+                // Join the results in file order.
+                LogStore store = new LogStore();
+                for(ChunkParser task : tasks) {
+                    store.addAll(task.join());
+                }
+                return store;
+            }
+            catch(UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * Divide a file into ranges of roughly equal size, with
+     * each range ending just after a newline (or at the end
+     * of the file).
+     * @param channel The open file.
+     * @return The start and end offsets of each range.
+     * @throws IOException If the file cannot be read.
+     */
+    private List<long[]> splitIntoRanges(FileChannel channel) throws IOException
+    {
+        long size = channel.size();
+        long target = size / (pool.getParallelism() * CHUNKS_PER_THREAD);
+        target = Math.max(MIN_CHUNK_BYTES, Math.min(MAX_CHUNK_BYTES / 2, target));
+
+        List<long[]> ranges = new ArrayList<>();
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        long start = 0;
+        while(start < size) {
+            long end = Math.min(size, start + target);
+            // Move the end forward to just past the next newline.
+            while(end < size) {
+                probe.clear();
+                int count = channel.read(probe, end);
+                if(count <= 0) {
+                    end = size;
+                    break;
+                }
+                int newline = indexOfNewline(probe.array(), 0, count);
+                if(newline >= 0) {
+                    end += newline + 1;
+                    break;
+                }
+                end += count;
+            }
+            if(end - start > MAX_CHUNK_BYTES) {
+                throw new IOException("Line too long near offset " + start);
+            }
+            ranges.add(new long[] { start, end });
+            start = end;
+        }
+        return ranges;
+    }
+
+    /**
+     * @return The index of the first newline in a range of bytes,
+     *         or -1 if there is none.
+     */
+    private static int indexOfNewline(byte[] data, int start, int end)
+    {
+        for(int i = start; i < end; i++) {
+            if(data[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * A task that reads one range of the file and parses it.
+     */
+    private static class ChunkParser extends RecursiveTask<LogStore>
+    {
+        private static final long serialVersionUID = 1L;
+
+        // The file to read from.
+        private final FileChannel channel;
+        // Where the range starts and ends in the file.
+        private final long start, end;
+        // What to do with lines that cannot be parsed.
+        private final LogParseState state;
+
+        /**
+         * @param channel The file to read from.
+         * @param start The offset of the first byte of the range.
+         * @param end The offset just past the last byte of the range.
+         * @param state What to do with lines that cannot be parsed.
+         */
+        ChunkParser(FileChannel channel, long start, long end, LogParseState state)
+        {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            this.state = state;
+        }
+
+        /**
+         * @return The records of the lines in the range.
+         */
+        protected LogStore compute()
+        {
+            byte[] data = new byte[(int) (end - start)];
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            try {
+                while(buffer.hasRemaining()) {
+                    if(channel.read(buffer, start + buffer.position()) < 0) {
+                        throw new IOException("File shrank while being read");
+                    }
+                }
+            }
+            catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            LogStore store = new LogStore();
+            new LoglineTokenizer(state).tokenizeLines(data, 0, data.length, store::add);
+            return store;
+        }
+    }
+}
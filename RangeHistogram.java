@@ -0,0 +1,213 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Count how often each whole number turns up, for numbers whose
+ * range is not known in advance, such as the years in a log.
+ * The counts are held in a primitive array that covers just the
+ * lowest to the highest number seen so far, and grows when a
+ * number outside that range is counted. The numbers that may be
+ * counted are limited to a range given when the histogram is made,
+ * so that one bad number cannot make the array huge.
+ *
+ * @author Steve Cate
+ * @version    10/17/26
+ */
+public class RangeHistogram
+{
+    // The counts, starting with the count for low.
+    private int[] counts;
+    // The number that counts[0] is for.
+    private int low;
+    // The lowest and highest numbers that may be counted.
+    private int minValue;
+    private int maxValue;
+
+    /**
+     * Create an empty histogram.
+     * @param minValue The lowest number that may be counted.
+     * @param maxValue The highest number that may be counted.
+     */
+    public RangeHistogram(int minValue, int maxValue)
+    {
+        if(minValue > maxValue) {
+            throw new IllegalArgumentException("Empty range: " + minValue + " to " + maxValue);
+        }
+        this.minValue = minValue;
+        this.maxValue = maxValue;
+        clear();
+    }
+
+    /**
+     * Count one more of a number.
+     * @param value The number to count.
+     * @throws IllegalArgumentException If the number is outside
+     *         the range the histogram was made for.
+     */
+    public void increment(int value)
+    {
+        int index = value - low;
+        if(index < 0 || index >= counts.length) {
+            index = makeRoomFor(value);
+        }
+        counts[index]++;
+    }
+
+    /**
+     * Add to the count of a number.
+     * @param value The number to count.
+     * @param count How many more of it there are.
+     * @throws IllegalArgumentException If the number is outside
+     *         the range the histogram was made for.
+     */
+    public void add(int value, int count)
+    {
+        int index = value - low;
+        if(index < 0 || index >= counts.length) {
+            index = makeRoomFor(value);
+        }
+        counts[index] += count;
+    }
+
+    /**
+     * Add all of another histogram's counts to this one.
+     * @param other The histogram to add.
+     */
+    public void add(RangeHistogram other)
+    {
+        for(int i = 0; i < other.counts.length; i++) {
+            if(other.counts[i] != 0) {
+                add(other.low + i, other.counts[i]);
+            }
+        }
+    }
+
+    /**
+     * @param value A number.
+     * @return How many times the number has been counted.
+     */
+    public int get(int value)
+    {
+        int index = value - low;
+        if(index < 0 || index >= counts.length) {
+            return 0;
+        }
+        return counts[index];
+    }
+
+    /**
+     * @return The lowest number the histogram covers.
+     */
+    public int getLow()
+    {
+        return low;
+    }
+
+    /**
+     * @return The highest number the histogram covers. This is
+     *         less than getLow() if nothing has been counted.
+     */
+    public int getHigh()
+    {
+        return low + counts.length - 1;
+    }
+
+    /**
+     * @return true if nothing has been counted.
+     */
+    public boolean isEmpty()
+    {
+        return counts.length == 0;
+    }
+
+    /**
+     * @return The total of all the counts.
+     */
+    public int getTotal()
+    {
+        int total = 0;
+        for(int count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Remove all of the counts.
+     */
+    public void clear()
+    {
+        counts = new int[0];
+        low = 0;
+    }
+
+    /**
+     * Write the histogram out.
+     * @param output Where to write the histogram.
+     * @throws IOException If the histogram cannot be written.
+     */
+    public void writeTo(DataOutputStream output) throws IOException
+    {
+        output.writeInt(low);
+        output.writeInt(counts.length);
+        for(int count : counts) {
+            output.writeInt(count);
+        }
+    }
+
+    /**
+     * Read a histogram written by writeTo.
+     * @param input Where to read the histogram from.
+     * @param minValue The lowest number that may be counted.
+     * @param maxValue The highest number that may be counted.
+     * @return The histogram.
+     * @throws IOException If the histogram cannot be read, or
+     *         covers numbers outside the range.
+     */
+    public static RangeHistogram readFrom(DataInputStream input, int minValue, int maxValue)
+        throws IOException
+    {
+        RangeHistogram histogram = new RangeHistogram(minValue, maxValue);
+        int low = input.readInt();
+        int length = input.readInt();
+        if(length < 0 || (length > 0 && (low < minValue || (long) low + length - 1 > maxValue))) {
+            throw new IOException("Bad histogram range: " + length + " from " + low);
+        }
+        histogram.low = low;
+        histogram.counts = new int[length];
+        for(int i = 0; i < length; i++) {
+            histogram.counts[i] = input.readInt();
+        }
+        return histogram;
+    }
+
+    /**
+     * Grow the array so that it covers a number.
+     * @param value The number to cover.
+     * @return The index of the number's count.
+     */
+    private int makeRoomFor(int value)
+    {
+        if(value < minValue || value > maxValue) {
+            throw new IllegalArgumentException("Cannot count " + value + ", outside " +
+                                               minValue + " to " + maxValue);
+        }
+        if(counts.length == 0) {
+            counts = new int[1];
+            low = value;
+        }
+        else if(value < low) {
+            int[] grown = new int[counts.length + (low - value)];
+            System.arraycopy(counts, 0, grown, low - value, counts.length);
+            counts = grown;
+            low = value;
+        }
+        else {
+            int[] grown = new int[value - low + 1];
+            System.arraycopy(counts, 0, grown, 0, counts.length);
+            counts = grown;
+        }
+        return value - low;
+    }
+}
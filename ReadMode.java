@@ -0,0 +1,30 @@
+/**
+ * The ways in which a LogfileReader can supply the entries
+ * of a log file.
+ *
+ * @author Steve Cate
+ * @version    10/17/26
+ */
+public enum ReadMode
+{
+    // Read the whole file into memory and sort it before
+    // supplying any entries.
+    LOAD,
+    // Supply the entries straight from the file as they are read,
+    // without keeping them. The file must already be sorted.
+    STREAM,
+    // Read the whole file into memory like LOAD, but split it
+    // into pieces that are parsed at the same time on several threads.
+    PARALLEL,
+    // Read the whole file into memory like LOAD, taking the fields
+    // straight from the bytes of the file mapped into memory.
+    MAPPED,
+    // Read the whole file into memory like LOAD, remembering how far
+    // it has been read so that lines added to the end of the file
+    // later on can be read with LogfileReader.refresh().
+    FOLLOW,
+    // Read the whole file into memory like LOAD, reading, parsing
+    // and storing the entries as separate stages on several threads
+    // at once (see LogPipeline).
+    PIPELINE
+}
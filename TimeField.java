@@ -0,0 +1,53 @@
+/**
+ * The parts of a log entry's date and time that counts can
+ * be grouped by, such as in LogAnalyzer.countsBetween().
+ * Each field has a fixed number of slots, one for each value
+ * it can take.
+ *
+ * @author Steve Cate
+ * @version    10/17/26
+ */
+public enum TimeField
+{
+    MONTH(12), DAY(31), HOUR(24), MINUTE(60);
+
+    // How many different values the field can take.
+    private final int slots;
+
+    /**
+     * @param slots How many different values the field can take.
+     */
+    TimeField(int slots)
+    {
+        this.slots = slots;
+    }
+
+    /**
+     * @return How many different values the field can take.
+     */
+    public int getSlots()
+    {
+        return slots;
+    }
+
+    /**
+     * Find which slot a record belongs in. Months and days
+     * are counted from 0 for this, so that January and the
+     * first of the month are both slot 0.
+     * @param record A packed record.
+     * @return The slot for the record's value of this field.
+     */
+    public int slotOf(long record)
+    {
+        switch(this) {
+            case MONTH:
+                return LogEntry.monthOf(record) - 1;
+            case DAY:
+                return LogEntry.dayOf(record) - 1;
+            case HOUR:
+                return LogEntry.hourOf(record);
+            default:
+                return LogEntry.minuteOf(record);
+        }
+    }
+}
@@ -0,0 +1,374 @@
+import java.util.Arrays;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Keep track of the most common keys in a log, such as its busiest
+ * minutes, in a fixed amount of memory however large the log is.
+ * This uses the Space-Saving method: at most capacity keys are
+ * counted, and when a new key turns up once they are all in use,
+ * it replaces the key with the lowest count and takes over that
+ * count as its possible error.
+ *
+ * Each count is at most its error over the true count, so the true
+ * count lies between getCount() - getError() and getCount(). Any key
+ * that makes up more than 1/capacity of the entries is sure to be kept,
+ * and no error is larger than getTotal() / capacity.
+ *
+ * A summary is a LogAccumulator, so it can be filled in by
+ * LogfileReader.scan or added to a LogAnalyzer's single pass.
+ *
+ * @author Steve Cate
+ * @version    10/17/26
+ */
+public class TopKSummary implements LogAccumulator
+{
+    // How to work out the key of a record.
+    private final LongUnaryOperator keyOf;
+    // The keys being counted, with their counts and errors, held
+    // as a heap with the lowest count first.
+    private final long[] keys;
+    private final long[] counts;
+    private final long[] errors;
+    // Where in the table each key of the heap is.
+    private final int[] slots;
+    // How many keys are being counted.
+    private int size;
+    // A hash table from each key to its place in the heap plus one.
+    // Empty slots hold 0. Linear probing is used, so the table must
+    // always have empty slots.
+    private final int[] table;
+    private final int tableMask;
+    // How many records have been counted.
+    private long total;
+
+    /**
+     * Create a summary that counts whatever keys a function picks out.
+     * @param capacity How many keys to count at once.
+     * @param keyOf Work out the key for a packed record.
+     */
+    public TopKSummary(int capacity, LongUnaryOperator keyOf)
+    {
+        if(capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.keyOf = keyOf;
+        keys = new long[capacity];
+        counts = new long[capacity];
+        errors = new long[capacity];
+        slots = new int[capacity];
+        table = new int[Integer.highestOneBit(capacity) * 4];
+        tableMask = table.length - 1;
+        size = 0;
+        total = 0;
+    }
+
+    /**
+     * Create a summary of the busiest minutes. Each key is a
+     * packed record for the minute, with a code of 0.
+     * @param capacity How many minutes to count at once.
+     */
+    public static TopKSummary busiestMinutes(int capacity)
+    {
+        return new TopKSummary(capacity,
+            record -> LogEntry.recordAt(LogEntry.timeOf(record)));
+    }
+
+    /**
+     * Create a summary of the busiest hours. Each key is a packed
+     * record for the start of the hour, with a code of 0.
+     * @param capacity How many hours to count at once.
+     */
+    public static TopKSummary busiestHours(int capacity)
+    {
+        return new TopKSummary(capacity, record -> LogEntry.recordAt(hourOf(record)));
+    }
+
+    /**
+     * Create a summary of the most common codes in each hour.
+     * Each key is a packed record for the start of the hour,
+     * with the code.
+     * @param capacity How many hours and codes to count at once.
+     */
+    public static TopKSummary busiestCodeHours(int capacity)
+    {
+        return new TopKSummary(capacity,
+            record -> LogEntry.recordAt(hourOf(record)) | LogEntry.codeOf(record));
+    }
+
+    /**
+     * Count the key of a record.
+     * @param record The packed record.
+     */
+    public void accumulate(long record)
+    {
+        add(keyOf.applyAsLong(record));
+    }
+
+    /**
+     * Count a key.
+     * @param key The key.
+     */
+    public void add(long key)
+    {
+        total++;
+        int slot = find(key);
+        if(table[slot] != 0) {
+            int heapIndex = table[slot] - 1;
+            counts[heapIndex]++;
+            siftDown(heapIndex);
+        }
+        else if(size < keys.length) {
+            keys[size] = key;
+            counts[size] = 1;
+            errors[size] = 0;
+            slots[size] = slot;
+            table[slot] = size + 1;
+            size++;
+            siftUp(size - 1);
+        }
+        else {
+            // Replace the key with the lowest count.
+            long lowest = counts[0];
+            removeFromTable(slots[0]);
+            slot = find(key);
+            keys[0] = key;
+            counts[0] = lowest + 1;
+            errors[0] = lowest;
+            slots[0] = slot;
+            table[slot] = 1;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Forget every key, so that counting starts again.
+     */
+    public void reset()
+    {
+        Arrays.fill(table, 0);
+        size = 0;
+        total = 0;
+    }
+
+    /**
+     * @return How many records have been counted.
+     */
+    public long getTotal()
+    {
+        return total;
+    }
+
+    /**
+     * @return The most that any count can be over the true count.
+     */
+    public long getMaxError()
+    {
+        return (size < keys.length) ? 0 : counts[0];
+    }
+
+    /**
+     * Return the keys with the highest counts, highest first.
+     * @param k How many keys to return.
+     * @return Up to k of the keys with their counts.
+     */
+    public Entry[] getTop(int k)
+    {
+        Integer[] order = new Integer[size];
+        for(int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(counts[b], counts[a]));
+        Entry[] top = new Entry[Math.min(k, size)];
+        for(int i = 0; i < top.length; i++) {
+            int index = order[i];
+            top[i] = new Entry(keys[index], counts[index], errors[index]);
+        }
+        return top;
+    }
+
+    /**
+     * Print the keys with the highest counts, highest first,
+     * taking each key to be a packed record.
+     * @param k How many keys to print.
+     */
+    public void printTop(int k)
+    {
+        for(Entry entry : getTop(k)) {
+            System.out.println(new LogEntry(entry.getKey()) + ": " +
+                               entry.getCount() + " +/- " + entry.getError());
+        }
+    }
+
+    /**
+     * @param record A packed record.
+     * @return The packed time of the start of the record's hour.
+     */
+    private static long hourOf(long record)
+    {
+        // The minute is the lowest part of a packed time.
+        return LogEntry.timeOf(record) - LogEntry.minuteOf(record);
+    }
+
+    /**
+     * Find the table slot that holds a key, or the empty slot
+     * where it would go.
+     * @param key The key.
+     * @return The slot.
+     */
+    private int find(long key)
+    {
+        int slot = hash(key);
+        while(table[slot] != 0 && keys[table[slot] - 1] != key) {
+            slot = (slot + 1) & tableMask;
+        }
+        return slot;
+    }
+
+    /**
+     * Empty a slot of the table, moving along any keys after
+     * it that would then no longer be found.
+     * @param slot The slot to empty.
+     */
+    private void removeFromTable(int slot)
+    {
+        table[slot] = 0;
+        int next = (slot + 1) & tableMask;
+        while(table[next] != 0) {
+            int heapIndex = table[next] - 1;
+            int home = hash(keys[heapIndex]);
+            // Move the key back if the gap is between its home and where it is.
+            if(((next - home) & tableMask) >= ((next - slot) & tableMask)) {
+                table[slot] = table[next];
+                slots[heapIndex] = slot;
+                table[next] = 0;
+                slot = next;
+            }
+            next = (next + 1) & tableMask;
+        }
+    }
+
+    /**
+     * @param key A key.
+     * @return The slot of the table the key would go in first.
+     */
+    private int hash(long key)
+    {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & tableMask;
+    }
+
+    /**
+     * Move a heap entry towards the top until its parent's count is no higher.
+     */
+    private void siftUp(int index)
+    {
+        while(index > 0) {
+            int parent = (index - 1) / 2;
+            if(counts[parent] <= counts[index]) {
+                return;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    /**
+     * Move a heap entry away from the top until neither child has a lower count.
+     */
+    private void siftDown(int index)
+    {
+        while(true) {
+            int lowest = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if(left < size && counts[left] < counts[lowest]) {
+                lowest = left;
+            }
+            if(right < size && counts[right] < counts[lowest]) {
+                lowest = right;
+            }
+            if(lowest == index) {
+                return;
+            }
+            swap(index, lowest);
+            index = lowest;
+        }
+    }
+
+    /**
+     * Swap two heap entries, keeping the table in step.
+     */
+    private void swap(int a, int b)
+    {
+        long key = keys[a];
+        keys[a] = keys[b];
+        keys[b] = key;
+        long count = counts[a];
+        counts[a] = counts[b];
+        counts[b] = count;
+        long error = errors[a];
+        errors[a] = errors[b];
+        errors[b] = error;
+        int slot = slots[a];
+        slots[a] = slots[b];
+        slots[b] = slot;
+        table[slots[a]] = a + 1;
+        table[slots[b]] = b + 1;
+    }
+
+    /**
+     * A key from the summary with its count.
+     */
+    public static class Entry
+    {
+        // The key.
+        private final long key;
+        // The count, which may be over the true count by up to error.
+        private final long count;
+        private final long error;
+
+        /**
+         * @param key The key.
+         * @param count The count.
+         * @param error The most the count may be over the true count.
+         */
+        public Entry(long key, long count, long error)
+        {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+
+        /**
+         * @return The key.
+         */
+        public long getKey()
+        {
+            return key;
+        }
+
+        /**
+         * @return The count, which is never below the true count.
+         */
+        public long getCount()
+        {
+            return count;
+        }
+
+        /**
+         * @return The most the count may be over the true count.
+         */
+        public long getError()
+        {
+            return error;
+        }
+
+        /**
+         * @return The lowest the true count can be.
+         */
+        public long getGuaranteedCount()
+        {
+            return count - error;
+        }
+    }
+}